@@ -32,13 +32,53 @@ AS
      FROM reviews
  GROUP BY email;
 
+-- rollup of reviews by book, maintained on every insert so reading the
+-- results does not need to scan the reviews table
+CREATE VIEW v_reviews_by_book
+(
+  book_id,
+  num_reviews
+)
+AS
+   SELECT book_id,  COUNT(*)
+     FROM reviews
+ GROUP BY book_id;
+
+-- reviews reserved by every reviewer, partitioned on email so the per reviewer
+-- limit can be enforced globally by a single partition transaction
+CREATE TABLE reviewer_quota
+(
+  email       varchar(50)     NOT NULL
+, num_reviews bigint          NOT NULL
+, CONSTRAINT PK_reviewer_quota PRIMARY KEY
+  (
+    email
+  )
+);
+
+PARTITION TABLE reviewer_quota ON COLUMN email;
+
+
+-- validation shared by Review, ReviewBatch and their dry runs
+IMPORT CLASS reviewer.procedures.ReviewValidation;
 
 -- stored procedures
 CREATE PROCEDURE FROM CLASS reviewer.procedures.Initialize;
 CREATE PROCEDURE FROM CLASS reviewer.procedures.Results;
 CREATE PROCEDURE FROM CLASS reviewer.procedures.Review;
-CREATE PROCEDURE ReviewsForBook AS SELECT COUNT(*) as num_reviews  FROM reviews, books
- where reviews.book_id = books.book_id and books.book_name = ?;
+CREATE PROCEDURE FROM CLASS reviewer.procedures.ReviewBatch;
+CREATE PROCEDURE FROM CLASS reviewer.procedures.ReviewDryRun;
+CREATE PROCEDURE FROM CLASS reviewer.procedures.ReviewBatchDryRun;
+CREATE PROCEDURE FROM CLASS reviewer.procedures.ReserveQuota;
+CREATE PROCEDURE FROM CLASS reviewer.procedures.ReleaseQuota;
+CREATE PROCEDURE FROM CLASS reviewer.procedures.PostReview;
+CREATE PROCEDURE FROM CLASS reviewer.procedures.ReviewsForBook;
 
 -- PARTITION statement is replaced by annotation within stored procedure
 -- PARTITION PROCEDURE Review ON TABLE reviews COLUMN book_id;
+-- PARTITION PROCEDURE ReviewBatch ON TABLE reviews COLUMN book_id;
+-- PARTITION PROCEDURE ReviewDryRun ON TABLE reviews COLUMN book_id;
+-- PARTITION PROCEDURE ReviewBatchDryRun ON TABLE reviews COLUMN book_id;
+-- PARTITION PROCEDURE ReserveQuota ON TABLE reviewer_quota COLUMN email;
+-- PARTITION PROCEDURE ReleaseQuota ON TABLE reviewer_quota COLUMN email;
+-- PARTITION PROCEDURE PostReview ON TABLE reviews COLUMN book_id;
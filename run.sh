@@ -40,10 +40,20 @@ VOLTDB="$VOLTDB_BIN/voltdb"
 LOG4J="$VOLTDB_VOLTDB/log4j.xml"
 LICENSE="$VOLTDB_VOLTDB/license.xml"
 HOST="localhost"
+# size of the local cluster started by the cluster targets
+HOSTCOUNT=${HOSTCOUNT:-3}
+KFACTOR=${KFACTOR:-0}
+MAXHOSTS=${MAXHOSTS:-4}
+# runs collected by repeat-benchmark and compared by compare
+RUNS=${RUNS:-3}
+BASELINE=${BASELINE:-Results-baseline.csv}
+CANDIDATE=${CANDIDATE:-Results-candidate.csv}
+# scenario file run by the scenario target
+SCENARIO=${SCENARIO:-scenarios/sweep.properties}
 
 # remove build artifacts
 function clean() {
-    rm -rf obj debugoutput $APPNAME.jar voltdbroot statement-plans log
+    rm -rf obj debugoutput $APPNAME.jar voltdbroot voltdbroot-* deployment-*.xml statement-plans log reviews.workload metrics.log scenario-*
 }
 
 # compile the source code for procedures and the client
@@ -95,6 +105,88 @@ function rejoin() {
     $VOLTDB rejoin -H $HOST -d deployment.xml -l $LICENSE
 }
 
+# Local multi-host cluster, to measure scaling on a single machine.
+# Node i uses ports offset by 100 * i (clients on 21212 + 100 * i), its own
+# deployment-i.xml and voltdbroot-i, e.g. HOSTCOUNT=3 KFACTOR=1 ./run.sh cluster
+function cluster-servers() {
+    local servers=""
+    for ((i = 0; i < HOSTCOUNT; i++)); do
+        servers="$servers${servers:+,}$HOST:$((21212 + 100 * i))"
+    done
+    echo $servers
+}
+
+function cluster-deployment() {
+    cat > deployment-$1.xml <<EOF
+<?xml version="1.0"?>
+<deployment>
+    <cluster hostcount="$HOSTCOUNT" kfactor="$KFACTOR" />
+    <paths>
+        <voltdbroot path="voltdbroot-$1" />
+    </paths>
+    <httpd enabled="true" port="$((8080 + $1))">
+        <jsonapi enabled="true" />
+    </httpd>
+</deployment>
+EOF
+}
+
+function cluster() {
+    # if a catalog doesn't exist, build one
+    if [ ! -f $APPNAME.jar ]; then catalog; fi
+    mkdir -p log
+    for ((i = 0; i < HOSTCOUNT; i++)); do
+        cluster-deployment $i
+        echo "Starting node $i of $HOSTCOUNT (kfactor $KFACTOR), clients on port $((21212 + 100 * i))."
+        nohup $VOLTDB create -d deployment-$i.xml -l $LICENSE -H $HOST:3021 \
+            --internal=$((3021 + 100 * i)) \
+            --zookeeper=$((7181 + 100 * i)) \
+            --replication=$((5555 + 100 * i)) \
+            --admin=$((21211 + 100 * i)) \
+            --client=$((21212 + 100 * i)) \
+            $APPNAME.jar > log/node-$i.log 2>&1 &
+        echo $! > log/node-$i.pid
+    done
+}
+
+function cluster-stop() {
+    for pidfile in log/node-*.pid; do
+        if [ -f "$pidfile" ]; then
+            kill $(cat $pidfile) 2> /dev/null
+            rm -f $pidfile
+        fi
+    done
+    wait
+}
+
+# Async benchmark against every node of the local cluster, with client affinity
+function cluster-benchmark() {
+    srccompile
+    java -classpath obj:$CLIENTCLASSPATH:obj -Dlog4j.configuration=file://$LOG4J \
+        reviewer.native_api.AsyncBenchmark \
+        --displayinterval=5 \
+        --warmup=5 \
+        --duration=60 \
+        --servers=$(cluster-servers) \
+        --clientaffinity=true \
+        --books=6 \
+        --maxreviews=2 \
+        --latencyreport=true \
+        --statsfile=Results-$HOSTCOUNT.csv
+}
+
+# Runs cluster-benchmark on local clusters of 1 to MAXHOSTS nodes,
+# leaving the summary of each size in Results-<hostcount>.csv
+function scaling-benchmark() {
+    for ((n = 1; n <= MAXHOSTS; n++)); do
+        HOSTCOUNT=$n
+        cluster
+        cluster-benchmark
+        cluster-stop
+        rm -rf voltdbroot-*
+    done
+}
+
 # run the client that drives the example
 function client() {
     async-benchmark
@@ -122,7 +214,70 @@ function async-benchmark() {
         --maxreviews=2 \
         --latencyreport=true \
         --statsfile=Results.csv 
+#        --metricsfile=metrics.log
+#        --metricsport=9100
 #        --ratelimit=100000
+#        --maxoutstanding=2000
+#        --reconnect=true --maxreconnectbackoff=8000 --retryqueue=10000 --maxattempts=3
+#        --batchsize=20 --batchflush=10
+#        --workloadfile=reviews.workload
+#        --submitters=4 --clientpersubmitter=true
+#        --bookdistribution=zipf --reviewers=100000 --reviewerdistribution=hotspot --fraudrate=0.01
+#        --seed=42 --reviewsperthread=1000000
+#        --adaptivewarmup=true --warmup=120 --steadywindow=5 --steadytolerance=0.05
+#        --warmupdryrun=true
+#        --loadprofile=ramp:1000:50000:60,hold:50000:60,burst:20000:100000:5:10:60,sine:50000:30000:60:120
+}
+
+# Open loop benchmark: calls are issued at a fixed rate and latency is
+# measured from their intended start (coordinated omission corrected)
+function openloop-benchmark() {
+    srccompile
+    java -classpath obj:$CLIENTCLASSPATH:obj -Dlog4j.configuration=file://$LOG4J \
+        reviewer.native_api.OpenLoopBenchmark \
+        --displayinterval=5 \
+        --warmup=5 \
+        --duration=120 \
+        --servers=localhost:21212 \
+        --books=6 \
+        --maxreviews=2 \
+        --rate=50000 \
+        --statsfile=Results.csv
+}
+
+# Saturation search: highest rate sustained with the 99th percentile under 5 ms
+function saturation-benchmark() {
+    srccompile
+    java -classpath obj:$CLIENTCLASSPATH:obj -Dlog4j.configuration=file://$LOG4J \
+        reviewer.native_api.SaturationBenchmark \
+        --warmup=5 \
+        --servers=localhost:21212 \
+        --books=6 \
+        --maxreviews=2 \
+        --rate=10000 \
+        --maxrate=1000000 \
+        --slapercentile=99 \
+        --slalatency=5 \
+        --stepduration=30 \
+        --searchprecision=0.02
+#        --steadywindow=5 --steadytolerance=0.05 --steadylatencytolerance=0.25
+}
+
+# Mixed benchmark: reviews, leaderboard and per book reads run concurrently,
+# with throughput and latency reported per procedure
+function mixed-benchmark() {
+    srccompile
+    java -classpath obj:$CLIENTCLASSPATH:obj -Dlog4j.configuration=file://$LOG4J \
+        reviewer.native_api.MixedBenchmark \
+        --displayinterval=5 \
+        --warmup=5 \
+        --duration=120 \
+        --servers=localhost:21212 \
+        --books=6 \
+        --maxreviews=2 \
+        --ratelimit=50000 \
+        --mix=Review:90,Results:5,ReviewsForBook:5 \
+        --statsfile=Results.csv
 }
 
 function simple-benchmark() {
@@ -131,6 +286,62 @@ function simple-benchmark() {
         reviewer.SimpleBenchmark localhost
 }
 
+# Results latency as the reviews table grows
+# Use async-benchmark-help for argument help
+function results-benchmark() {
+    srccompile
+    java -classpath obj:$CLIENTCLASSPATH:obj -Dlog4j.configuration=file://$LOG4J \
+        reviewer.native_api.ResultsBenchmark \
+        --servers=localhost:21212 \
+        --books=6 \
+        --resultsizes=1000000,10000000,100000000 \
+        --resultcalls=100
+}
+
+# Pre-generate a workload file, replayed by the benchmarks when they are
+# given the same --workloadfile option
+function workload() {
+    srccompile
+    java -classpath obj:$CLIENTCLASSPATH:obj \
+        reviewer.WorkloadCompiler \
+        --books=6 \
+        --workloadsize=10000000 \
+        --workloadfile=reviews.workload
+}
+
+# Per interval percentiles of a benchmark run with --metricsfile=metrics.log
+function metrics() {
+    srccompile
+    java -classpath obj:$CLIENTCLASSPATH:obj reviewer.MetricsReader metrics.log
+}
+
+# Run every combination of the SCENARIO file, one JVM per run, and print a comparison table
+function scenario() {
+    srccompile
+    java -classpath obj:$CLIENTCLASSPATH:obj -Dlog4j.configuration=file://$LOG4J \
+        reviewer.ScenarioRunner $SCENARIO
+}
+
+# Run the async benchmark RUNS times, appending every summary row to CANDIDATE
+function repeat-benchmark() {
+    for ((n = 1; n <= RUNS; n++)); do
+        rm -f Results.csv
+        async-benchmark
+        cat Results.csv >> $CANDIDATE
+    done
+}
+
+# Compare the CANDIDATE runs to the BASELINE runs, exits with 1 on a regression
+# and with 2 when more runs are needed to tell a change from noise
+function compare() {
+    srccompile
+    java -classpath obj:$CLIENTCLASSPATH:obj reviewer.ResultsComparator \
+        --baseline=$BASELINE \
+        --candidate=$CANDIDATE \
+        --maxthroughputdrop=5 \
+        --maxlatencyrise=10
+}
+
 # Multi-threaded synchronous benchmark sample
 # Use this target for argument help
 function sync-benchmark-help() {
@@ -151,6 +362,23 @@ function sync-benchmark() {
         --threads=40
 }
 
+# 100k simulated reviewers, each on a virtual thread with a 1s think time.
+# Needs to run on Java 21 or later, older JVMs fall back to platform threads.
+function virtual-benchmark() {
+    srccompile
+    java -classpath obj:$CLIENTCLASSPATH:obj -Dlog4j.configuration=file://$LOG4J \
+        reviewer.native_api.SyncBenchmark \
+        --displayinterval=5 \
+        --warmup=5 \
+        --duration=120 \
+        --servers=localhost:21212 \
+        --books=6 \
+        --maxreviews=2 \
+        --threads=100000 \
+        --thinktime=1000 \
+        --virtualthreads=true
+}
+
 # JDBC benchmark sample
 # Use this target for argument help
 function jdbc-benchmark-help() {
@@ -168,11 +396,14 @@ function jdbc-benchmark() {
         --servers=localhost:21212 \
         --books=6 \
         --threads=40
+#        --jdbcbatchsize=50
+#        --connectionperthread=true
 }
 
 function help() {
     echo "Usage: ./run.sh {clean|catalog|server|async-benchmark|aysnc-benchmark-help|...}"
-    echo "       {...|sync-benchmark|sync-benchmark-help|jdbc-benchmark|jdbc-benchmark-help}"
+    echo "       {...|openloop-benchmark|saturation-benchmark|mixed-benchmark|sync-benchmark|sync-benchmark-help|virtual-benchmark|jdbc-benchmark|jdbc-benchmark-help}"
+    echo "       {...|cluster|cluster-stop|cluster-benchmark|scaling-benchmark|metrics|repeat-benchmark|compare|scenario}"
 }
 
 # Run the target passed as the first arg on the command line
@@ -0,0 +1,110 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Sandeep Kunkunuru
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package benchmarks;
+
+import common.BookReviewsGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import util.KeyDistribution;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how fast BookReviewsGenerator produces reviews, with a generator
+ * per thread as the drivers use it, and with one generator shared by all
+ * threads.
+ *
+ * Run with: mvn -Pjmh compile exec:exec -Djmh.args="BookReviewsGenerator -prof gc"
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BookReviewsGeneratorBenchmark {
+
+    @State(Scope.Thread)
+    public static class PerThread {
+        @Param({KeyDistribution.UNIFORM, KeyDistribution.ZIPF})
+        public String distribution;
+
+        BookReviewsGenerator generator;
+
+        @Setup
+        public void setup() {
+            generator = create(distribution);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Shared {
+        @Param({KeyDistribution.UNIFORM, KeyDistribution.ZIPF})
+        public String distribution;
+
+        BookReviewsGenerator generator;
+
+        @Setup
+        public void setup() {
+            generator = create(distribution);
+        }
+    }
+
+    /**
+     * A generator over the default 6 books and 1000 known reviewers.
+     */
+    static BookReviewsGenerator create(String distribution) {
+        return new BookReviewsGenerator(
+                KeyDistribution.create(distribution, 6, 1.0, 0.2, 0.8),
+                KeyDistribution.create(distribution, 1000, 1.0, 0.2, 0.8),
+                0.01);
+    }
+
+    @Benchmark
+    public BookReviewsGenerator.Review receive(PerThread state) {
+        return state.generator.receive();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public BookReviewsGenerator.Review receiveContended(PerThread state) {
+        return state.generator.receive();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public BookReviewsGenerator.Review receiveShared(Shared state) {
+        return state.generator.receive();
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Sandeep Kunkunuru
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package benchmarks;
+
+import models.Message;
+import models.Stats;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import services.MessageCodec;
+import services.ReviewStatsCodec;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the JSON codecs the web application pushes over its websockets.
+ * Every decode starts from the text the matching encode produced.
+ *
+ * Run with: mvn -Pjmh compile exec:exec -Djmh.args="Codec -prof gc"
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CodecBenchmark {
+    private final ReviewStatsCodec statsCodec = new ReviewStatsCodec();
+    private final MessageCodec messageCodec = new MessageCodec();
+
+    private Stats stats;
+    private Message message;
+    private String encodedStats;
+    private String encodedMessage;
+
+    @Setup
+    public void setup() throws Exception {
+        stats = Stats.forValues();
+        stats.setStartTS(System.currentTimeMillis() - 60000);
+        stats.setInvocations(1200000);
+        stats.setAccepted(1150000);
+        stats.setInvalidEntity(12000);
+        stats.setInvalid(38000);
+        stats.setThroughput(20000);
+        stats.setLatency(1.25);
+        stats.setLatency_95(3.5);
+        encodedStats = statsCodec.encode(stats);
+
+        message = new Message();
+        message.setMessage("Throughput is 20,000 reviews per second");
+        message.setSender("reviewer");
+        message.setReceived(new Date());
+        encodedMessage = messageCodec.encode(message);
+    }
+
+    @Benchmark
+    public String encodeStats() throws Exception {
+        return statsCodec.encode(stats);
+    }
+
+    @Benchmark
+    public Stats decodeStats() throws Exception {
+        return statsCodec.decode(encodedStats);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public String encodeStatsContended() throws Exception {
+        return statsCodec.encode(stats);
+    }
+
+    @Benchmark
+    public String encodeMessage() throws Exception {
+        return messageCodec.encode(message);
+    }
+
+    @Benchmark
+    public Message decodeMessage() throws Exception {
+        return messageCodec.decode(encodedMessage);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Message decodeMessageContended() throws Exception {
+        return messageCodec.decode(encodedMessage);
+    }
+}
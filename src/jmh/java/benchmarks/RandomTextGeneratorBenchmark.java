@@ -0,0 +1,117 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Sandeep Kunkunuru
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package benchmarks;
+
+import common.Constants;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import util.RandomTextGenerator;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the original RandomTextGenerator (a new Random and a growing
+ * StringBuilder per call) with the thread local, buffer reusing one.
+ *
+ * Run with: mvn -Pjmh compile exec:exec -Djmh.args="RandomTextGenerator -prof gc"
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RandomTextGeneratorBenchmark {
+    // 25 for email ids, 75 for reviews
+    @Param({"25", "75"})
+    public int length;
+
+    private final char[] text = new char[128];
+    private final ByteBuffer bytes = ByteBuffer.allocate(128);
+
+    /**
+     * The implementation RandomTextGenerator.generateText started from.
+     */
+    static String legacyGenerateText(int length, char[] permissibleCharacters) {
+        Random rand = new Random();
+
+        StringBuilder str = new StringBuilder();
+
+        while (str.length() < length) {
+            str.append(permissibleCharacters[rand.nextInt(permissibleCharacters.length)]);
+        }
+
+        return str.toString();
+    }
+
+    @Benchmark
+    public String legacy() {
+        return legacyGenerateText(length, Constants.PERMISSIBLE_REVIEW_CHARACTERS);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public String legacyContended() {
+        return legacyGenerateText(length, Constants.PERMISSIBLE_REVIEW_CHARACTERS);
+    }
+
+    @Benchmark
+    public String generateText() {
+        return RandomTextGenerator.generateText(length, Constants.PERMISSIBLE_REVIEW_CHARACTERS);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public String generateTextContended() {
+        return RandomTextGenerator.generateText(length, Constants.PERMISSIBLE_REVIEW_CHARACTERS);
+    }
+
+    @Benchmark
+    public char[] fillChars() {
+        RandomTextGenerator.fill(text, 0, length, Constants.PERMISSIBLE_REVIEW_CHARACTERS,
+                ThreadLocalRandom.current());
+        return text;
+    }
+
+    @Benchmark
+    public ByteBuffer fillBytes() {
+        bytes.clear();
+        RandomTextGenerator.fill(bytes, length, Constants.PERMISSIBLE_REVIEW_CHARACTERS,
+                ThreadLocalRandom.current());
+        return bytes;
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Sandeep Kunkunuru
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package benchmarks;
+
+import common.Constants;
+import models.Stats;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures recording outcomes into one Stats shared by every thread, the way
+ * the callbacks of all clients do, against the single AtomicLong per outcome
+ * Stats was built on before its counters were striped.
+ *
+ * Run with: mvn -Pjmh compile exec:exec -Djmh.args="StatsBenchmark"
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StatsBenchmark {
+    private final Stats stats = new Stats();
+
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong invocations = new AtomicLong();
+
+    // a plausible call latency, 1.2 ms
+    private static final long LATENCY_NANOS = 1200000;
+
+    @Benchmark
+    public void legacy() {
+        accepted.incrementAndGet();
+        invocations.incrementAndGet();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void legacyContended() {
+        accepted.incrementAndGet();
+        invocations.incrementAndGet();
+    }
+
+    @Benchmark
+    public void updateResults() {
+        stats.updateResults(Constants.REVIEW_SUCCESSFUL);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void updateResultsContended() {
+        stats.updateResults(Constants.REVIEW_SUCCESSFUL);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void updateResultsContended8() {
+        stats.updateResults(Constants.REVIEW_SUCCESSFUL);
+    }
+
+    @Benchmark
+    public void updateResultsWithLatency() {
+        stats.updateResults(Constants.REVIEW_SUCCESSFUL, LATENCY_NANOS);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void updateResultsWithLatencyContended() {
+        stats.updateResults(Constants.REVIEW_SUCCESSFUL, LATENCY_NANOS);
+    }
+
+    @Benchmark
+    public Stats.Snapshot snapshotAndReset() {
+        return stats.snapshotAndReset();
+    }
+}
@@ -1,10 +1,12 @@
 package common;
 
+import util.KeyDistribution;
 import util.RandomTextGenerator;
 
 import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
 
-public class BookReviewsGenerator {
+public class BookReviewsGenerator implements ReviewSource {
     public static class Review {
         public final int bookId;
         public final String email;
@@ -17,18 +19,58 @@ public class BookReviewsGenerator {
         }
     }
 
-    private final int bookCount;
-    private final Random rand = new Random();
-    private final boolean fraud;
+    // book id used to simulate fraud, no such book exists
+    public static final int INVALID_BOOK_ID = 999;
+
+    // null to draw from the ThreadLocalRandom of the calling thread
+    private final Random rand;
+    private final KeyDistribution books;
+    // null when every review comes from a brand new reviewer
+    private final KeyDistribution reviewers;
+    private final double fraudRate;
+
+    // reviews left before the stream is exhausted, negative for no limit
+    private long remaining = -1;
 
     public BookReviewsGenerator(final int bookCount) {
-        this.bookCount = bookCount;
-        this.fraud = true;
+        this(bookCount, true);
     }
 
     public BookReviewsGenerator(int bookCount, boolean b) {
-        this.bookCount = bookCount;
-        this.fraud = b;
+        this(new KeyDistribution.Uniform(bookCount), null, b ? 0.01 : 0);
+    }
+
+    /**
+     * Builds a generator following the workload distributions of the configuration.
+     */
+    public BookReviewsGenerator(ReviewerConfig config) {
+        this(config, 0);
+    }
+
+    /**
+     * Builds a generator following the workload distributions of the configuration,
+     * drawing from the given stream of its seed, if any. The distributions are
+     * shared with every other generator of the configuration.
+     */
+    public BookReviewsGenerator(ReviewerConfig config, int stream) {
+        this(config.getBookDistribution(), config.getReviewerDistribution(), config.fraudrate,
+                streamRandom(config.seed, stream));
+    }
+
+    public BookReviewsGenerator(KeyDistribution books, KeyDistribution reviewers, double fraudRate) {
+        this(books, reviewers, fraudRate, null);
+    }
+
+    /**
+     * @param rand generator of every random choice, null for the ThreadLocalRandom
+     *             of the calling thread. A seeded generator makes the sequence of
+     *             reviews reproducible, but must not be shared between threads.
+     */
+    public BookReviewsGenerator(KeyDistribution books, KeyDistribution reviewers, double fraudRate, Random rand) {
+        this.rand = rand;
+        this.books = books;
+        this.reviewers = reviewers;
+        this.fraudRate = fraudRate;
     }
 
 
@@ -38,25 +80,78 @@ public class BookReviewsGenerator {
      * @return details (email, review and book to which the review is given)
      */
     public Review receive() {
+        if (remaining == 0) return null;
+        if (remaining > 0) remaining--;
+
+        Random rand = this.rand != null ? this.rand : ThreadLocalRandom.current();
+
         // Pick a book number
-        int bookId = rand.nextInt(bookCount) + 1;
+        int bookId = books.next(rand) + 1;
 
-        //  introduce an invalid book every 100 call or so to simulate fraud
+        //  introduce an invalid book every now and then to simulate fraud
         //  and invalid entries (something the transaction validates against)
-        if (fraud && rand.nextInt(100) == 0) {
-            bookId = 999;
+        if (fraudRate > 0 && rand.nextDouble() < fraudRate) {
+            bookId = INVALID_BOOK_ID;
         }
 
-        // Build the email
-        String email = RandomTextGenerator.generateText(25, Constants.PERMISSIBLE_EMAIL_ID_CHARACTERS) +
-                "@" + RandomTextGenerator.generateText(5, Constants.PERMISSIBLE_EMAIL_DOMAIN_CHARACTERS) +
-                "." + RandomTextGenerator.generateText(3, Constants.PERMISSIBLE_DOMAIN_EXT_CHARACTERS);
+        // Build the email, either of a brand new reviewer or of a known one
+        String email = reviewers == null ? newEmail(rand) : reviewerEmail(reviewers.next(rand));
 
         // Build review
-        String review = RandomTextGenerator.generateText(75, Constants.PERMISSIBLE_REVIEW_CHARACTERS);
+        String review = RandomTextGenerator.generateText(75, Constants.PERMISSIBLE_REVIEW_CHARACTERS, rand);
 
         //StdOut.println(bookId + "------" + email + "------" + review + "------");
 
         return new Review(bookId, email, review);
     }
+
+    /**
+     * Limits the stream to the given number of reviews, after which
+     * {@link #receive()} returns null. 0 leaves it unlimited.
+     */
+    public BookReviewsGenerator limit(long reviews) {
+        remaining = reviews > 0 ? reviews : -1;
+        return this;
+    }
+
+    /**
+     * @return the generator of the given stream of a seed, null when unseeded.
+     * Streams of the same seed are independent: their seeds are spread apart
+     * by a splitmix64 step, so close streams do not produce related sequences.
+     */
+    public static Random streamRandom(long seed, int stream) {
+        if (seed == 0) return null;
+
+        long z = seed + (stream + 1) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return new Random(z ^ (z >>> 31));
+    }
+
+    /**
+     * Builds the whole 35 character email of a new reviewer in one buffer,
+     * rather than concatenating its parts.
+     */
+    private static String newEmail(Random random) {
+        char[] email = new char[35];
+
+        RandomTextGenerator.fill(email, 0, 25, Constants.PERMISSIBLE_EMAIL_ID_CHARACTERS, random);
+        email[25] = '@';
+        RandomTextGenerator.fill(email, 26, 5, Constants.PERMISSIBLE_EMAIL_DOMAIN_CHARACTERS, random);
+        email[31] = '.';
+        RandomTextGenerator.fill(email, 32, 3, Constants.PERMISSIBLE_DOMAIN_EXT_CHARACTERS, random);
+
+        return new String(email);
+    }
+
+    /**
+     * The email of a reviewer of the bounded population only depends on its
+     * number, so the same reviewer always comes back with the same email.
+     */
+    static String reviewerEmail(int reviewer) {
+        long key = (long) reviewer * 3;
+        return RandomTextGenerator.generateText(25, Constants.PERMISSIBLE_EMAIL_ID_CHARACTERS, key) +
+                "@" + RandomTextGenerator.generateText(5, Constants.PERMISSIBLE_EMAIL_DOMAIN_CHARACTERS, key + 1) +
+                "." + RandomTextGenerator.generateText(3, Constants.PERMISSIBLE_DOMAIN_EXT_CHARACTERS, key + 2);
+    }
 }
@@ -0,0 +1,363 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Sandeep Kunkunuru
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package common;
+
+import org.voltdb.client.Client;
+import org.voltdb.client.ClientResponse;
+import org.voltdb.client.ProcedureCallback;
+import util.StdOut;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps a set of clients connected while hosts come and go.
+ *
+ * A lost host is reconnected in the background, with an exponential backoff
+ * capped at <code>maxBackoffMillis</code>, for every client. Calls issued
+ * through {@link #callProcedure} that fail because their connection was lost
+ * are put in a bounded queue and issued again once a connection is available,
+ * up to <code>maxAttempts</code> times. While no connection is available the
+ * retries wait for the next reconnection, then go through the queue at once. Beware that such a call may have been
+ * executed before the connection was lost, so it can be executed twice.
+ *
+ * Every outage is kept, so that the recovery time and the throughput dip can
+ * be reported at the end of a run.
+ */
+public class ConnectionManager {
+
+    /**
+     * Loss of one host, until every client is connected to it again.
+     */
+    static class Outage {
+        final String host;
+        final long lostTS;
+        volatile long recoveredTS;
+        final List<Client> pending;
+
+        Outage(String host, long lostTS, List<Client> pending) {
+            this.host = host;
+            this.lostTS = lostTS;
+            this.pending = pending;
+        }
+    }
+
+    private final List<Client> clients;
+    private final long maxBackoffMillis;
+    private final int maxAttempts;
+    private final BlockingQueue<RetryCallback> retries;
+
+    private final ScheduledExecutorService reconnector;
+    private final Thread retrier;
+
+    // outages being recovered, per host:port, and every outage so far
+    private final Map<String, Outage> lostHosts = new HashMap<String, Outage>();
+    private final List<Outage> outages = new ArrayList<Outage>();
+
+    // clients connected to a lost host again so far, guarded by this
+    private long reconnections;
+
+    private final AtomicLong retried = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * @param clients          clients to keep connected, possibly added to later.
+     * @param maxBackoffMillis longest wait between two reconnection attempts.
+     * @param retryQueueSize   calls waiting for a retry at most, 0 disables retries.
+     * @param maxAttempts      times a call is issued at most.
+     */
+    public ConnectionManager(List<Client> clients, long maxBackoffMillis, int retryQueueSize, int maxAttempts) {
+        this.clients = clients;
+        this.maxBackoffMillis = maxBackoffMillis;
+        this.maxAttempts = maxAttempts;
+        this.retries = retryQueueSize > 0 ? new ArrayBlockingQueue<RetryCallback>(retryQueueSize) : null;
+
+        ThreadFactory daemons = new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "connection-manager");
+                t.setDaemon(true);
+                return t;
+            }
+        };
+        reconnector = Executors.newSingleThreadScheduledExecutor(daemons);
+        retrier = daemons.newThread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (true) {
+                        RetryCallback call = retries.take();
+                        long seen = getReconnections();
+                        if (!call.resubmit()) {
+                            // no connection, park until one is back rather than
+                            // going around the queue while the host is down
+                            awaitReconnection(seen);
+                            call.requeue();
+                        }
+                    }
+                } catch (InterruptedException ignored) {
+                }
+            }
+        });
+        if (retries != null) retrier.start();
+    }
+
+    /**
+     * Starts reconnecting every client to the given host, unless that is already under way.
+     */
+    public void connectionLost(String hostname, int port) {
+        final String host = hostname + ":" + port;
+        synchronized (this) {
+            if (lostHosts.containsKey(host)) return;
+
+            Outage outage = new Outage(host, System.currentTimeMillis(), new ArrayList<Client>(clients));
+            lostHosts.put(host, outage);
+            outages.add(outage);
+        }
+        scheduleReconnect(host, 1000);
+    }
+
+    private void scheduleReconnect(final String host, final long backoffMillis) {
+        reconnector.schedule(new Runnable() {
+            @Override
+            public void run() {
+                Outage outage;
+                synchronized (ConnectionManager.this) {
+                    outage = lostHosts.get(host);
+                }
+                if (outage == null) return;
+
+                List<Client> stillPending = new ArrayList<Client>();
+                for (Client client : outage.pending) {
+                    try {
+                        client.createConnection(host);
+                    } catch (Exception e) {
+                        stillPending.add(client);
+                    }
+                }
+                if (stillPending.size() < outage.pending.size()) {
+                    reconnected();
+                }
+
+                if (stillPending.isEmpty()) {
+                    outage.recoveredTS = System.currentTimeMillis();
+                    synchronized (ConnectionManager.this) {
+                        lostHosts.remove(host);
+                    }
+                    System.err.printf("Reconnected to %s after %,.1f s.\n", host,
+                            (outage.recoveredTS - outage.lostTS) / 1000.0);
+                    return;
+                }
+
+                outage.pending.retainAll(stillPending);
+                System.err.printf("Reconnection to %s failed - retrying in %,.1f second(s).\n", host,
+                        Math.min(2 * backoffMillis, maxBackoffMillis) / 1000.0);
+                scheduleReconnect(host, Math.min(2 * backoffMillis, maxBackoffMillis));
+            }
+        }, backoffMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized long getReconnections() {
+        return reconnections;
+    }
+
+    private synchronized void reconnected() {
+        reconnections++;
+        notifyAll();
+    }
+
+    /**
+     * Waits until some client connects to a lost host again, after the given
+     * number of reconnections. Waits <code>maxBackoffMillis</code> at most, or
+     * briefly when no outage is known, the lost connection not being reported yet.
+     */
+    private synchronized void awaitReconnection(long seen) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + (lostHosts.isEmpty() ? 100 : maxBackoffMillis);
+        long now;
+        while (reconnections == seen && (now = System.currentTimeMillis()) < deadline) {
+            wait(deadline - now);
+        }
+    }
+
+    /**
+     * Asynchronously calls a procedure, retrying it if its connection is lost.
+     *
+     * @return whether the call was queued by the client.
+     */
+    public boolean callProcedure(Client client, ProcedureCallback callback, String procedure,
+                                 Object... parameters) throws IOException {
+        if (retries == null) {
+            return client.callProcedure(callback, procedure, parameters);
+        }
+        return client.callProcedure(new RetryCallback(client, callback, procedure, parameters),
+                procedure, parameters);
+    }
+
+    /**
+     * Hands a response to the actual callback, unless its call is worth retrying.
+     */
+    class RetryCallback implements ProcedureCallback {
+        private final Client client;
+        private final ProcedureCallback callback;
+        private final String procedure;
+        private final Object[] parameters;
+        // written by the retrier before the call is issued, read by the network thread
+        private volatile int attempts = 1;
+        private ClientResponse lastResponse;
+
+        RetryCallback(Client client, ProcedureCallback callback, String procedure, Object[] parameters) {
+            this.client = client;
+            this.callback = callback;
+            this.procedure = procedure;
+            this.parameters = parameters;
+        }
+
+        @Override
+        public void clientCallback(ClientResponse response) throws Exception {
+            if (response.getStatus() == ClientResponse.CONNECTION_LOST && attempts < maxAttempts) {
+                lastResponse = response;
+                if (retries.offer(this)) return;
+                dropped.incrementAndGet();
+            }
+            callback.clientCallback(response);
+        }
+
+        /**
+         * Issues the call again.
+         *
+         * @return false if no connection is available, the call not being issued.
+         */
+        boolean resubmit() {
+            // counted before the call is issued, its response may come back first
+            attempts++;
+            boolean queued = false;
+            try {
+                queued = client.callProcedure(this, procedure, parameters);
+            } catch (IOException ignored) {
+                // no connection left, the caller waits for a reconnection
+            }
+
+            if (queued) {
+                retried.incrementAndGet();
+            } else {
+                attempts--;
+            }
+            return queued;
+        }
+
+        /**
+         * Puts the call back in the queue, handing it its last response if the queue is full.
+         */
+        void requeue() {
+            if (!retries.offer(this)) {
+                dropped.incrementAndGet();
+                try {
+                    callback.clientCallback(lastResponse);
+                } catch (Exception ignored) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits, at most <code>timeoutMillis</code>, for the calls waiting for a retry to be issued again.
+     */
+    public void awaitRetries(long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (retries != null && !retries.isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Stops reconnecting and retrying.
+     */
+    public void shutdown() {
+        reconnector.shutdownNow();
+        retrier.interrupt();
+    }
+
+    /**
+     * Prints every outage with its recovery time, and the throughput dip it
+     * caused according to the given periodic throughput samples.
+     *
+     * @param startTS    start of the measurement, outages are reported relative to it.
+     * @param throughput samples of {timestamp in ms, txns/sec}, in chronological order.
+     */
+    public synchronized void printResults(long startTS, List<long[]> throughput) {
+        if (outages.isEmpty()) return;
+
+        StdOut.print(Constants.HORIZONTAL_RULE);
+        StdOut.println(" Connection Recovery");
+        StdOut.println(Constants.HORIZONTAL_RULE);
+        StdOut.printf("%-24s %10s %12s %14s %12s %16s\n",
+                "Host", "Lost (s)", "Recovery (s)", "Before (tx/s)", "Lowest (tx/s)", "Back to 90% (s)");
+        for (Outage outage : outages) {
+            long before = 0;
+            int beforeSamples = 0;
+            long lowest = Long.MAX_VALUE;
+            long backTS = -1;
+            long recoveredTS = outage.recoveredTS == 0 ? Long.MAX_VALUE : outage.recoveredTS;
+
+            for (long[] sample : throughput) {
+                if (sample[0] < outage.lostTS && sample[0] >= outage.lostTS - 30000) {
+                    before += sample[1];
+                    beforeSamples++;
+                }
+            }
+            if (beforeSamples > 0) before /= beforeSamples;
+
+            boolean sampledAfterRecovery = false;
+            for (long[] sample : throughput) {
+                if (sample[0] < outage.lostTS) continue;
+                // the first sample after the recovery still covers part of the outage
+                if (!sampledAfterRecovery) {
+                    lowest = Math.min(lowest, sample[1]);
+                    sampledAfterRecovery = sample[0] > recoveredTS;
+                }
+                if (backTS < 0 && sample[0] > recoveredTS && sample[1] >= 0.9 * before) backTS = sample[0];
+            }
+
+            StdOut.printf("%-24s %10.1f %12s %,14d %,12d %16s\n", outage.host,
+                    (outage.lostTS - startTS) / 1000.0,
+                    outage.recoveredTS == 0 ? "never" : String.format("%.1f", (outage.recoveredTS - outage.lostTS) / 1000.0),
+                    before,
+                    lowest == Long.MAX_VALUE ? 0 : lowest,
+                    backTS < 0 ? "never" : String.format("%.1f", (backTS - outage.lostTS) / 1000.0));
+        }
+        StdOut.printf("\nCalls retried after a lost connection: %,d\n", retried.get());
+        StdOut.printf("Calls not retried, retry queue full:    %,d\n\n", dropped.get());
+    }
+}
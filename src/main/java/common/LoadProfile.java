@@ -0,0 +1,217 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Sandeep Kunkunuru
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package common;
+
+import util.LatencyHistogram;
+import util.StdOut;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Time varying target rate made of consecutive segments, declared as a comma
+ * separated list of:
+ * <pre>
+ *   ramp:from:to:seconds                         linear ramp from one rate to another
+ *   hold:rate:seconds                            constant rate
+ *   burst:low:high:highSeconds:lowSeconds:seconds square wave, starting with the burst
+ *   sine:mean:amplitude:periodSeconds:seconds     sinusoid, like a compressed diurnal cycle
+ * </pre>
+ * Rates are in calls per second. For instance
+ * <code>ramp:1000:20000:60,hold:20000:60,burst:5000:40000:5:10:60</code>.
+ *
+ * Calls are paced through {@link #acquire()}, and every segment keeps its own
+ * outcome counts and latency histogram for the final report.
+ */
+public class LoadProfile {
+
+    public static class Segment {
+        final String spec;
+        final String kind;
+        final double[] args;
+        final long durationMillis;
+        long startMillis;
+
+        final LatencyHistogram latency = new LatencyHistogram();
+        final AtomicLong failures = new AtomicLong();
+
+        Segment(String spec) {
+            this.spec = spec;
+            String[] parts = spec.trim().split(":");
+            kind = parts[0];
+
+            int expected;
+            if ("ramp".equals(kind)) expected = 3;
+            else if ("hold".equals(kind)) expected = 2;
+            else if ("burst".equals(kind)) expected = 5;
+            else if ("sine".equals(kind)) expected = 4;
+            else throw new IllegalArgumentException("Unknown load profile segment: " + spec);
+
+            if (parts.length != expected + 1) {
+                throw new IllegalArgumentException("Load profile segment " + spec + " needs " + expected + " values");
+            }
+            args = new double[expected];
+            for (int i = 0; i < expected; i++) {
+                args[i] = Double.parseDouble(parts[i + 1]);
+                if (args[i] < 0) throw new IllegalArgumentException("Negative value in " + spec);
+            }
+            durationMillis = (long) (1000 * args[expected - 1]);
+            if (durationMillis <= 0) throw new IllegalArgumentException("Empty load profile segment " + spec);
+        }
+
+        /**
+         * @return the target rate, in calls per second, at <code>t</code> milliseconds into the segment.
+         */
+        double rateAt(long t) {
+            if ("ramp".equals(kind)) {
+                return args[0] + (args[1] - args[0]) * t / durationMillis;
+            } else if ("hold".equals(kind)) {
+                return args[0];
+            } else if ("burst".equals(kind)) {
+                long period = (long) (1000 * (args[2] + args[3]));
+                return t % period < 1000 * args[2] ? args[1] : args[0];
+            } else {
+                return args[0] + args[1] * Math.sin(2 * Math.PI * t / (1000 * args[2]));
+            }
+        }
+    }
+
+    private static final long MAX_CATCH_UP_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final List<Segment> segments = new ArrayList<Segment>();
+    private final long durationMillis;
+
+    // start of the profile, 0 until it is started
+    private volatile long startNanos;
+    // next free call slot, shared by every paced thread
+    private long nextSlotNanos;
+
+    public LoadProfile(String spec) {
+        long offset = 0;
+        for (String part : spec.split(",")) {
+            Segment segment = new Segment(part);
+            segment.startMillis = offset;
+            offset += segment.durationMillis;
+            segments.add(segment);
+        }
+        durationMillis = offset;
+    }
+
+    /**
+     * @return the total duration of the profile, in seconds.
+     */
+    public int getDuration() {
+        return (int) ((durationMillis + 999) / 1000);
+    }
+
+    /**
+     * Starts the profile clock. Until then calls are paced at the initial rate.
+     */
+    public void start() {
+        startNanos = System.nanoTime();
+    }
+
+    /**
+     * @return the index of the segment active <code>elapsedMillis</code> into the profile.
+     */
+    int segmentAt(long elapsedMillis) {
+        for (int i = segments.size() - 1; i > 0; i--) {
+            if (elapsedMillis >= segments.get(i).startMillis) return i;
+        }
+        return 0;
+    }
+
+    /**
+     * Blocks until the calling thread may issue its next call.
+     *
+     * @return the index of the segment the call belongs to, -1 before the profile is started.
+     */
+    public int acquire() throws InterruptedException {
+        long slot;
+        int segmentIndex;
+        synchronized (this) {
+            long now = System.nanoTime();
+            long start = startNanos;
+            long elapsedMillis = start == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(now - start);
+
+            segmentIndex = start == 0 ? -1 : segmentAt(elapsedMillis);
+            Segment segment = segments.get(Math.max(0, segmentIndex));
+            double rate = Math.max(1, segment.rateAt(Math.max(0, elapsedMillis - segment.startMillis)));
+
+            // catch up on slots lost to sleep overshoot, but do not bank more
+            // than a few milliseconds, so idle time does not turn into a burst
+            slot = Math.max(nextSlotNanos, now - MAX_CATCH_UP_NANOS);
+            nextSlotNanos = slot + (long) (1000000000.0 / rate);
+        }
+
+        long wait = slot - System.nanoTime();
+        if (wait > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+        return segmentIndex;
+    }
+
+    /**
+     * Records the outcome and latency of a call issued within the given segment.
+     */
+    public void record(int segment, long latencyNanos, boolean success) {
+        if (segment < 0) return;
+
+        Segment s = segments.get(segment);
+        s.latency.recordNanos(latencyNanos);
+        if (!success) s.failures.incrementAndGet();
+    }
+
+    /**
+     * Records the outcome of a batch, every review counting in the segment it
+     * was paced in with the latency of the whole batch.
+     */
+    public void record(int[] segments, long latencyNanos, boolean success) {
+        for (int segment : segments) {
+            record(segment, latencyNanos, success);
+        }
+    }
+
+    public void printResults() {
+        StdOut.print("\n" + Constants.HORIZONTAL_RULE);
+        StdOut.println(" Load Profile Segments");
+        StdOut.println(Constants.HORIZONTAL_RULE);
+        StdOut.printf("%-32s %12s %10s %10s %10s %10s %10s\n",
+                "Segment", "Achieved/s", "Failures", "Avg (ms)", "50th (ms)", "99th (ms)", "99.9th (ms)");
+        for (Segment s : segments) {
+            StdOut.printf("%-32s %,12d %,10d %10.2f %10.2f %10.2f %10.2f\n",
+                    s.spec.trim(),
+                    s.latency.getTotalCount() * 1000 / s.durationMillis,
+                    s.failures.get(),
+                    s.latency.getAverageLatency(),
+                    s.latency.kPercentileLatencyAsDouble(.5),
+                    s.latency.kPercentileLatencyAsDouble(.99),
+                    s.latency.kPercentileLatencyAsDouble(.999));
+        }
+        StdOut.println();
+    }
+}
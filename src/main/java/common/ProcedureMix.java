@@ -0,0 +1,101 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Sandeep Kunkunuru
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package common;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Ratios of the procedures run concurrently by the mixed benchmark, declared
+ * as a comma separated list of procedure:weight pairs, the procedures being
+ * Review, Results and ReviewsForBook. For instance
+ * <code>Review:90,Results:5,ReviewsForBook:5</code>.
+ *
+ * Instances are immutable, the randomness comes from the caller's generator.
+ */
+public class ProcedureMix {
+    public static final String REVIEW = "Review";
+    public static final String RESULTS = "Results";
+    public static final String REVIEWS_FOR_BOOK = "ReviewsForBook";
+
+    private final List<String> procedures = new ArrayList<String>();
+    private final List<Double> weights = new ArrayList<Double>();
+    private final double[] cdf;
+
+    public ProcedureMix(String spec) {
+        double total = 0;
+        for (String part : spec.split(",")) {
+            String[] pair = part.trim().split(":");
+            if (pair.length != 2) {
+                throw new IllegalArgumentException("Mix entry " + part + " is not procedure:weight");
+            }
+            String procedure = pair[0].trim();
+            if (!REVIEW.equals(procedure) && !RESULTS.equals(procedure) && !REVIEWS_FOR_BOOK.equals(procedure)) {
+                throw new IllegalArgumentException("Unknown procedure in mix: " + procedure);
+            }
+            if (procedures.contains(procedure)) {
+                throw new IllegalArgumentException("Procedure " + procedure + " appears twice in mix");
+            }
+            double weight = Double.parseDouble(pair[1]);
+            if (weight < 0) throw new IllegalArgumentException("Negative weight in " + part);
+
+            procedures.add(procedure);
+            weights.add(weight);
+            total += weight;
+        }
+        if (total <= 0) throw new IllegalArgumentException("Mix has no positive weight");
+
+        cdf = new double[weights.size()];
+        double sum = 0;
+        for (int i = 0; i < cdf.length; i++) {
+            sum += weights.get(i) / total;
+            cdf[i] = sum;
+        }
+    }
+
+    /**
+     * @return the procedure of the next call.
+     */
+    public String next(Random rand) {
+        double u = rand.nextDouble();
+        for (int i = 0; i < cdf.length - 1; i++) {
+            if (u < cdf[i]) return procedures.get(i);
+        }
+        return procedures.get(cdf.length - 1);
+    }
+
+    public List<String> getProcedures() {
+        return procedures;
+    }
+
+    /**
+     * @return the share of the calls going to the given procedure, between 0 and 1.
+     */
+    public double getShare(String procedure) {
+        int i = procedures.indexOf(procedure);
+        return i < 0 ? 0 : cdf[i] - (i == 0 ? 0 : cdf[i - 1]);
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Sandeep Kunkunuru
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package common;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Groups generated reviews by book, so that a whole batch can be posted
+ * to the single partition owning that book with one ReviewBatch call.
+ * A batch is flushed once it holds <code>batchSize</code> reviews or once its
+ * oldest review has waited <code>flushMillis</code>.
+ *
+ * Not thread safe, each submitting thread owns its own batcher.
+ */
+public class ReviewBatcher {
+    /**
+     * Receives a full (or expired) batch of reviews for one book.
+     */
+    public interface Sink {
+        /**
+         * @param segments the load profile segment each review was paced in, -1 if none.
+         */
+        void flush(int bookId, String[] emails, String[] reviews, int[] segments) throws Exception;
+    }
+
+    private class Batch {
+        final String[] emails = new String[batchSize];
+        final String[] reviews = new String[batchSize];
+        final int[] segments = new int[batchSize];
+        int size;
+        long firstAddedTS;
+    }
+
+    private final int batchSize;
+    private final long flushMillis;
+    private final Sink sink;
+    private final Map<Integer, Batch> batches = new HashMap<Integer, Batch>();
+    private long lastExpiryCheckTS;
+
+    public ReviewBatcher(int batchSize, long flushMillis, Sink sink) {
+        this.batchSize = batchSize;
+        this.flushMillis = flushMillis;
+        this.sink = sink;
+    }
+
+    /**
+     * Adds a review to the batch of its book, flushing that batch when full
+     * and any other batch that has been waiting for too long.
+     */
+    public void add(BookReviewsGenerator.Review review) throws Exception {
+        add(review, -1);
+    }
+
+    /**
+     * Same as {@link #add(BookReviewsGenerator.Review)}, for a review paced
+     * within the given load profile segment.
+     */
+    public void add(BookReviewsGenerator.Review review, int segment) throws Exception {
+        long now = System.currentTimeMillis();
+
+        Batch batch = batches.get(review.bookId);
+        if (batch == null) {
+            batch = new Batch();
+            batches.put(review.bookId, batch);
+        }
+        if (batch.size == 0) {
+            batch.firstAddedTS = now;
+        }
+
+        batch.emails[batch.size] = review.email;
+        batch.reviews[batch.size] = review.review;
+        batch.segments[batch.size] = segment;
+        batch.size++;
+
+        if (batch.size == batchSize) {
+            flush(review.bookId, batch);
+        }
+
+        // checking once per millisecond is plenty given the flush granularity
+        if (now != lastExpiryCheckTS) {
+            lastExpiryCheckTS = now;
+            flushExpired(now);
+        }
+    }
+
+    /**
+     * Flushes every batch whose oldest review is older than the flush interval.
+     */
+    public void flushExpired(long now) throws Exception {
+        for (Map.Entry<Integer, Batch> entry : batches.entrySet()) {
+            Batch batch = entry.getValue();
+            if (batch.size > 0 && now - batch.firstAddedTS >= flushMillis) {
+                flush(entry.getKey(), batch);
+            }
+        }
+    }
+
+    /**
+     * Flushes every non empty batch, typically at the end of a run.
+     */
+    public void flushAll() throws Exception {
+        for (Map.Entry<Integer, Batch> entry : batches.entrySet()) {
+            if (entry.getValue().size > 0) {
+                flush(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    private void flush(int bookId, Batch batch) throws Exception {
+        String[] emails = new String[batch.size];
+        String[] reviews = new String[batch.size];
+        int[] segments = new int[batch.size];
+        System.arraycopy(batch.emails, 0, emails, 0, batch.size);
+        System.arraycopy(batch.reviews, 0, reviews, 0, batch.size);
+        System.arraycopy(batch.segments, 0, segments, 0, batch.size);
+        batch.size = 0;
+
+        sink.flush(bookId, emails, reviews, segments);
+    }
+}
@@ -25,6 +25,8 @@
 package common;
 
 import org.voltdb.CLIConfig;
+import util.KeyDistribution;
+import util.VirtualThreads;
 
 /**
  * Uses included {@link org.voltdb.CLIConfig} class to
@@ -32,15 +34,28 @@ import org.voltdb.CLIConfig;
  * and validation.
  */
 public class ReviewerConfig extends CLIConfig {
+    // Immutable key distributions, shared by the generators of every thread
+    private KeyDistribution bookDistribution;
+    private KeyDistribution reviewerDistribution;
+
+    // set by check, invalid options throw rather than exit
+    private boolean checking;
+
     @Option(desc = "Interval for performance feedback, in seconds.")
     public long displayinterval = 5;
 
     @Option(desc = "Benchmark duration, in seconds.")
     public int duration = 120;
 
-    @Option(desc = "Warmup duration in seconds.")
+    @Option(desc = "Warmup duration in seconds, the longest warmup with adaptivewarmup.")
     public int warmup = 5;
 
+    @Option(desc = "End the warmup as soon as the interval throughput and latency are steady, see steadywindow.")
+    public boolean adaptivewarmup = false;
+
+    @Option(desc = "Validate reviews during the warmup through ReviewDryRun and ReviewBatchDryRun, without posting them. Runs the full warmup, even with adaptivewarmup.")
+    public boolean warmupdryrun = false;
+
     @Option(desc = "Comma separated list of the form server[:port] to connect to.")
     public String servers = "localhost";
 
@@ -53,9 +68,42 @@ public class ReviewerConfig extends CLIConfig {
     @Option(desc = "Filename to write raw summary statistics to.")
     public String statsfile = "";
 
+    @Option(desc = "Port serving live metrics at /metrics, in the Prometheus text format (0 disables it).")
+    public int metricsport = 0;
+
+    @Option(desc = "Filename to append the statistics of every display interval to, latency histograms included.")
+    public String metricsfile = "";
+
     @Option(desc = "Number of concurrent threads synchronously calling procedures.")
     public int threads = 40;
 
+    @Option(desc = "Run every synchronous reviewer on a virtual thread (Java 21 or later), for very large thread counts.")
+    public boolean virtualthreads = false;
+
+    @Option(desc = "Average think time of a synchronous reviewer between two reviews, in milliseconds.")
+    public long thinktime = 0;
+
+    @Option(desc = "Number of threads asynchronously submitting reviews, each with its own generator.")
+    public int submitters = 1;
+
+    @Option(desc = "Give every asynchronous submitter its own client connection(s).")
+    public boolean clientpersubmitter = false;
+
+    @Option(desc = "Send every single partition call straight to the host owning its partition (connect to all hosts).")
+    public boolean clientaffinity = false;
+
+    @Option(desc = "Reconnect lost hosts in the background.")
+    public boolean reconnect = true;
+
+    @Option(desc = "Longest wait between two reconnection attempts to a lost host, in milliseconds.")
+    public long maxreconnectbackoff = 8000;
+
+    @Option(desc = "Number of asynchronous calls failed by a lost connection waiting to be retried (0 disables retries).")
+    public int retryqueue = 10000;
+
+    @Option(desc = "Number of times an asynchronous call is issued at most when its connection is lost.")
+    public int maxattempts = 3;
+
     @Option(desc = "User name for connection.")
     public String user = "";
 
@@ -65,9 +113,115 @@ public class ReviewerConfig extends CLIConfig {
     @Option(desc = "Maximum TPS rate for benchmark.")
     public int ratelimit = Integer.MAX_VALUE;
 
+    @Option(desc = "Maximum number of asynchronous calls in flight, across all submitters (0 leaves it to the client).")
+    public int maxoutstanding = 0;
+
+    @Option(desc = "Target rate of the open loop benchmark, and first rate of the saturation search, in calls per second.")
+    public int rate = 10000;
+
+    @Option(desc = "Highest rate, in calls per second, tried by the saturation benchmark.")
+    public int maxrate = 1000000;
+
+    @Option(desc = "Latency percentile the saturation benchmark holds to slalatency, e.g. 99 or 99.9.")
+    public double slapercentile = 99;
+
+    @Option(desc = "Latency, in milliseconds, slapercentile must stay under for a rate to be sustainable.")
+    public double slalatency = 5;
+
+    @Option(desc = "Longest time, in seconds, the saturation benchmark waits for a rate to reach steady state.")
+    public int stepduration = 30;
+
+    @Option(desc = "Relative width, between the highest passing and lowest failing rates, the saturation search stops at.")
+    public double searchprecision = 0.02;
+
+    @Option(desc = "Number of consecutive one second intervals the steady state is judged over.")
+    public int steadywindow = 5;
+
+    @Option(desc = "Largest coefficient of variation of the interval throughput in steady state.")
+    public double steadytolerance = 0.05;
+
+    @Option(desc = "Largest coefficient of variation of the interval average latency in steady state.")
+    public double steadylatencytolerance = 0.25;
+
+    @Option(desc = "Time varying target rate, as comma separated segments ramp:from:to:seconds, hold:rate:seconds, "
+            + "burst:low:high:highSeconds:lowSeconds:seconds or sine:mean:amplitude:periodSeconds:seconds. "
+            + "Replaces duration when set.")
+    public String loadprofile = "";
+
+    @Option(desc = "Procedures run by the mixed benchmark, as comma separated procedure:weight pairs "
+            + "among Review, Results and ReviewsForBook.")
+    public String mix = "Review:90,Results:5,ReviewsForBook:5";
+
     @Option(desc = "Report latency for async benchmark run.")
     public boolean latencyreport = false;
 
+    @Option(desc = "Number of reviews for the same book posted in one ReviewBatch call (1 disables batching).")
+    public int batchsize = 1;
+
+    @Option(desc = "Maximum time a partially filled batch waits before being posted, in milliseconds.")
+    public long batchflush = 10;
+
+    @Option(desc = "Number of Review calls the JDBC benchmark groups in one executeBatch (the driver still sends them one by one).")
+    public int jdbcbatchsize = 1;
+
+    @Option(desc = "Give every JDBC benchmark thread its own connection object (the driver still shares one client per servers list).")
+    public boolean connectionperthread = false;
+
+    @Option(desc = "Enforce maxreviews globally through the email partitioned reviewer_quota table.")
+    public boolean quota = false;
+
+    @Option(desc = "Distribution of reviews over books: uniform, zipf or hotspot.")
+    public String bookdistribution = "uniform";
+
+    @Option(desc = "Number of distinct reviewers, 0 for a brand new reviewer on every review.")
+    public int reviewers = 0;
+
+    @Option(desc = "Distribution of reviews over reviewers: uniform, zipf or hotspot.")
+    public String reviewerdistribution = "uniform";
+
+    @Option(desc = "Skew of the zipf distributions, 1.0 being the classic zipf law.")
+    public double zipfexponent = 1.0;
+
+    @Option(desc = "Fraction of the books or reviewers forming the hot set of the hotspot distributions.")
+    public double hotspotfraction = 0.2;
+
+    @Option(desc = "Fraction of the reviews going to the hot set of the hotspot distributions.")
+    public double hotspotaccess = 0.8;
+
+    @Option(desc = "Fraction of the reviews given to an invalid book, to simulate fraud.")
+    public double fraudrate = 0.01;
+
+    @Option(desc = "Seed of the generated reviews, every thread drawing from its own stream derived from it. "
+            + "0 for a different workload on every run.")
+    public long seed = 0;
+
+    @Option(desc = "Number of reviews every benchmark thread submits before stopping, 0 for no limit.")
+    public long reviewsperthread = 0;
+
+    @Option(desc = "Workload file to replay instead of generating reviews, see WorkloadCompiler.")
+    public String workloadfile = "";
+
+    @Option(desc = "Number of reviews written to the workload file by WorkloadCompiler.")
+    public long workloadsize = 10000000;
+
+    @Option(desc = "Comma separated review table sizes at which the Results benchmark measures latency.")
+    public String resultsizes = "1000000,10000000,100000000";
+
+    @Option(desc = "Number of Results calls timed at each review table size.")
+    public int resultcalls = 100;
+
+    @Option(desc = "Comma separated summary CSV or metrics files of the baseline runs, see ResultsComparator.")
+    public String baseline = "";
+
+    @Option(desc = "Comma separated summary CSV or metrics files of the candidate runs, see ResultsComparator.")
+    public String candidate = "";
+
+    @Option(desc = "Throughput drop, in percent, ResultsComparator tolerates before failing.")
+    public double maxthroughputdrop = 5;
+
+    @Option(desc = "Latency percentile rise, in percent, ResultsComparator tolerates before failing.")
+    public double maxlatencyrise = 10;
+
     @Override
     public void validate() {
         if (duration <= 0) exitWithMessageAndUsage("duration must be > 0");
@@ -77,5 +231,96 @@ public class ReviewerConfig extends CLIConfig {
         if (books <= 0) exitWithMessageAndUsage("books must be > 0");
         if (maxreviews <= 0) exitWithMessageAndUsage("maxreviews must be > 0");
         if (threads <= 0) exitWithMessageAndUsage("threads must be > 0");
+        if (virtualthreads && !VirtualThreads.isSupported()) {
+            exitWithMessageAndUsage("virtualthreads needs Java 21 or later, platform threads can not run that many reviewers");
+        }
+        if (rate <= 0) exitWithMessageAndUsage("rate must be > 0");
+        if (maxreconnectbackoff < 1000) exitWithMessageAndUsage("maxreconnectbackoff must be >= 1000");
+        if (retryqueue < 0) exitWithMessageAndUsage("retryqueue must be >= 0");
+        if (maxattempts <= 0) exitWithMessageAndUsage("maxattempts must be > 0");
+        if (metricsport < 0 || metricsport > 65535) exitWithMessageAndUsage("metricsport must be between 0 and 65535");
+        if (maxoutstanding < 0) exitWithMessageAndUsage("maxoutstanding must be >= 0");
+        if (thinktime < 0) exitWithMessageAndUsage("thinktime must be >= 0");
+        if (submitters <= 0) exitWithMessageAndUsage("submitters must be > 0");
+        // every review in a batch queues its own validation statement
+        if (batchsize <= 0 || batchsize > 100) exitWithMessageAndUsage("batchsize must be between 1 and 100");
+        if (batchflush <= 0) exitWithMessageAndUsage("batchflush must be > 0");
+        if (jdbcbatchsize <= 0) exitWithMessageAndUsage("jdbcbatchsize must be > 0");
+        if (!KeyDistribution.isKnown(bookdistribution)) exitWithMessageAndUsage("bookdistribution must be uniform, zipf or hotspot");
+        if (!KeyDistribution.isKnown(reviewerdistribution)) exitWithMessageAndUsage("reviewerdistribution must be uniform, zipf or hotspot");
+        if (reviewers < 0) exitWithMessageAndUsage("reviewers must be >= 0");
+        if (zipfexponent <= 0) exitWithMessageAndUsage("zipfexponent must be > 0");
+        if (hotspotfraction <= 0 || hotspotfraction > 1) exitWithMessageAndUsage("hotspotfraction must be > 0 and <= 1");
+        if (hotspotaccess < 0 || hotspotaccess > 1) exitWithMessageAndUsage("hotspotaccess must be between 0 and 1");
+        if (fraudrate < 0 || fraudrate > 1) exitWithMessageAndUsage("fraudrate must be between 0 and 1");
+        if (workloadsize <= 0) exitWithMessageAndUsage("workloadsize must be > 0");
+        if (reviewsperthread < 0) exitWithMessageAndUsage("reviewsperthread must be >= 0");
+        if (maxrate <= 0) exitWithMessageAndUsage("maxrate must be > 0");
+        if (slapercentile <= 0 || slapercentile > 100) exitWithMessageAndUsage("slapercentile must be between 0 and 100");
+        if (slalatency <= 0) exitWithMessageAndUsage("slalatency must be > 0");
+        if (stepduration <= 0) exitWithMessageAndUsage("stepduration must be > 0");
+        if (searchprecision <= 0) exitWithMessageAndUsage("searchprecision must be > 0");
+        if (steadywindow < 2) exitWithMessageAndUsage("steadywindow must be >= 2");
+        if (steadytolerance <= 0) exitWithMessageAndUsage("steadytolerance must be > 0");
+        if (steadylatencytolerance <= 0) exitWithMessageAndUsage("steadylatencytolerance must be > 0");
+        if (maxthroughputdrop < 0) exitWithMessageAndUsage("maxthroughputdrop must be >= 0");
+        if (maxlatencyrise < 0) exitWithMessageAndUsage("maxlatencyrise must be >= 0");
+        if (quota && batchsize > 1) exitWithMessageAndUsage("quota can not be combined with batchsize > 1");
+        if (resultcalls <= 0) exitWithMessageAndUsage("resultcalls must be > 0");
+        if (!"".equals(loadprofile.trim())) {
+            try {
+                new LoadProfile(loadprofile);
+            } catch (IllegalArgumentException e) {
+                exitWithMessageAndUsage("loadprofile is invalid: " + e.getMessage());
+            }
+        }
+        try {
+            new ProcedureMix(mix);
+        } catch (IllegalArgumentException e) {
+            exitWithMessageAndUsage("mix is invalid: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Parses and validates the given arguments like a driver does, without
+     * exiting when they are invalid.
+     *
+     * @throws IllegalArgumentException with the message a driver would exit with.
+     */
+    public static void check(String[] args) {
+        ReviewerConfig config = new ReviewerConfig();
+        config.checking = true;
+        config.parse(ReviewerConfig.class.getName(), args);
+    }
+
+    @Override
+    public void exitWithMessageAndUsage(String msg) {
+        if (checking) throw new IllegalArgumentException(msg);
+        super.exitWithMessageAndUsage(msg);
+    }
+
+    /**
+     * @return the distribution of the reviewed books, built once and shared
+     * by every generator of the configuration.
+     */
+    public synchronized KeyDistribution getBookDistribution() {
+        if (bookDistribution == null) {
+            bookDistribution = KeyDistribution.create(bookdistribution, books,
+                    zipfexponent, hotspotfraction, hotspotaccess);
+        }
+        return bookDistribution;
+    }
+
+    /**
+     * @return the distribution of the bounded reviewer population, built once
+     * and shared by every generator of the configuration, null without one.
+     */
+    public synchronized KeyDistribution getReviewerDistribution() {
+        if (reviewers == 0) return null;
+        if (reviewerDistribution == null) {
+            reviewerDistribution = KeyDistribution.create(reviewerdistribution, reviewers,
+                    zipfexponent, hotspotfraction, hotspotaccess);
+        }
+        return reviewerDistribution;
     }
 }
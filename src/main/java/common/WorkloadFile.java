@@ -0,0 +1,191 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Sandeep Kunkunuru
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package common;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compact binary file of pre-generated reviews, so that the benchmarks can
+ * replay a workload instead of generating it on their hot loop.
+ *
+ * The file starts with a 16 byte header (magic, version, review count) followed
+ * by fixed size records, which lets any number of threads pick records by index:
+ * <pre>
+ *   int   book id
+ *   byte  email length, then 50 bytes of ASCII email
+ *   byte  review length, then 100 bytes of ASCII review
+ *   4 bytes of padding
+ * </pre>
+ */
+public class WorkloadFile {
+    static final int MAGIC = 0x5256574C;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 16;
+
+    // same sizes as the columns of the reviews table
+    static final int MAX_EMAIL_LENGTH = 50;
+    static final int MAX_REVIEW_LENGTH = 100;
+    static final int RECORD_SIZE = 160;
+
+    // the largest number of records a single mapping (limited to 2GB) holds
+    static final int RECORDS_PER_SEGMENT = Integer.MAX_VALUE / RECORD_SIZE;
+
+    /**
+     * Writes <code>count</code> reviews received from <code>source</code> to <code>file</code>.
+     */
+    public static void write(File file, long count, ReviewSource source) throws IOException {
+        RandomAccessFile out = new RandomAccessFile(file, "rw");
+        try {
+            out.setLength(0);
+            FileChannel channel = out.getChannel();
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putLong(count).flip();
+            channel.write(header);
+
+            ByteBuffer records = ByteBuffer.allocateDirect(RECORD_SIZE * 4096);
+            for (long i = 0; i < count; i++) {
+                BookReviewsGenerator.Review review = source.receive();
+
+                int start = records.position();
+                records.putInt(review.bookId);
+                putText(records, review.email, MAX_EMAIL_LENGTH);
+                putText(records, review.review, MAX_REVIEW_LENGTH);
+                records.position(start + RECORD_SIZE);
+
+                if (!records.hasRemaining()) {
+                    records.flip();
+                    while (records.hasRemaining()) channel.write(records);
+                    records.clear();
+                }
+            }
+            records.flip();
+            while (records.hasRemaining()) channel.write(records);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void putText(ByteBuffer records, String text, int maxLength) {
+        int length = Math.min(text.length(), maxLength);
+        records.put((byte) length);
+        for (int i = 0; i < length; i++) {
+            records.put((byte) text.charAt(i));
+        }
+        records.position(records.position() + maxLength - length);
+    }
+
+    /**
+     * Replays a workload file through memory mappings. Records are decoded
+     * straight from the mapped pages, so replaying does no generation work;
+     * the only objects created per review are the ones handed to the client.
+     *
+     * Thread safe: threads share a cursor and read records by absolute index.
+     * Once every record has been replayed, {@link #receive()} returns null:
+     * replaying again would repeat reviewers that already posted, turning
+     * most of the replay into rejections.
+     */
+    public static class Reader implements ReviewSource {
+        private final MappedByteBuffer[] segments;
+        private final long count;
+        private final AtomicLong cursor = new AtomicLong();
+        private final ThreadLocal<char[]> buffers = new ThreadLocal<char[]>() {
+            @Override
+            protected char[] initialValue() {
+                return new char[MAX_REVIEW_LENGTH];
+            }
+        };
+
+        public Reader(File file) throws IOException {
+            RandomAccessFile in = new RandomAccessFile(file, "r");
+            try {
+                FileChannel channel = in.getChannel();
+
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                channel.read(header, 0);
+                header.flip();
+                if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC) {
+                    throw new IOException(file + " is not a workload file");
+                }
+                if (header.getInt() != VERSION) {
+                    throw new IOException(file + " has an unsupported workload file version");
+                }
+                count = header.getLong();
+                if (count <= 0 || channel.size() < HEADER_SIZE + count * RECORD_SIZE) {
+                    throw new IOException(file + " is empty or truncated");
+                }
+
+                segments = new MappedByteBuffer[(int) ((count + RECORDS_PER_SEGMENT - 1) / RECORDS_PER_SEGMENT)];
+                for (int i = 0; i < segments.length; i++) {
+                    long first = (long) i * RECORDS_PER_SEGMENT;
+                    long records = Math.min(RECORDS_PER_SEGMENT, count - first);
+                    segments[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+                            HEADER_SIZE + first * RECORD_SIZE, records * RECORD_SIZE);
+                }
+            } finally {
+                // mappings stay valid once the file is closed
+                in.close();
+            }
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        @Override
+        public BookReviewsGenerator.Review receive() {
+            long index = cursor.getAndIncrement();
+            if (index >= count) {
+                if (index == count) {
+                    System.err.printf("Workload file exhausted after %,d reviews, its threads stop.\n", count);
+                }
+                return null;
+            }
+            MappedByteBuffer segment = segments[(int) (index / RECORDS_PER_SEGMENT)];
+            int offset = (int) (index % RECORDS_PER_SEGMENT) * RECORD_SIZE;
+
+            int bookId = segment.getInt(offset);
+            String email = getText(segment, offset + 4);
+            String review = getText(segment, offset + 5 + MAX_EMAIL_LENGTH);
+
+            return new BookReviewsGenerator.Review(bookId, email, review);
+        }
+
+        private String getText(MappedByteBuffer segment, int offset) {
+            char[] buffer = buffers.get();
+            int length = segment.get(offset) & 0xFF;
+            for (int i = 0; i < length; i++) {
+                buffer[i] = (char) segment.get(offset + 1 + i);
+            }
+            return new String(buffer, 0, length);
+        }
+    }
+}
@@ -25,19 +25,42 @@
 package models;
 
 import common.Constants;
+import util.LatencyHistogram;
 import util.StdOut;
-
-import java.util.concurrent.atomic.AtomicLong;
+import util.StripedCounters;
 
 /**
  * Created by sandeep on 8/4/14.
+ *
+ * Review outcomes are counted in striped counters, so the callback threads of
+ * every client can record them without contending on shared counters, and
+ * the latency of every outcome is kept in its own histogram: a rejected
+ * review returns before the insert, and would hide its cost otherwise.
+ * Values decoded or relayed by the gateway come from {@link #forValues()}.
  */
 public class Stats {
-    private AtomicLong invocations = new AtomicLong(0);
-    private AtomicLong invalidEntity = new AtomicLong(0);
-    private AtomicLong invalid = new AtomicLong(0);
-    private AtomicLong accepted = new AtomicLong(0);
-    private AtomicLong failed = new AtomicLong(0);
+    // outcomes, indexing the counters and latency histograms
+    public static final int ACCEPTED = 0;
+    public static final int INVALID_BOOK = 1;
+    public static final int OVER_LIMIT = 2;
+    public static final int FAILED = 3;
+    public static final int OUTCOMES = 4;
+    static final int INVOCATIONS = 4;
+
+    // short names of the outcomes, for metrics and files
+    public static final String[] OUTCOME_KEYS = {"accepted", "invalid_book", "over_limit", "failed"};
+
+    public static final String[] OUTCOME_NAMES = {
+            "Accepted", "Rejected (Invalid Book)", "Rejected (Maximum Review Count Reached)", "Failed (Transaction Error)"};
+
+    private final StripedCounters counters;
+    // striped when recording, created on first use with a single stripe otherwise
+    private final LatencyHistogram[] latencies = new LatencyHistogram[OUTCOMES];
+
+    // values at the previous snapshotAndReset, guarded by this, no histogram until then
+    private long[] baselineCounts = new long[OUTCOMES + 1];
+    private final LatencyHistogram[] baselineLatencies = new LatencyHistogram[OUTCOMES];
+
     private long throughput;
     private long aborts;
     private long errors;
@@ -47,22 +70,143 @@ public class Stats {
     private long endTS;
     private long startTS;
 
-    public void updateResults(long resultCode) {
+    /**
+     * Creates the statistics the driver records into from every client thread.
+     */
+    public Stats() {
+        counters = new StripedCounters(OUTCOMES + 1);
+        for (int i = 0; i < OUTCOMES; i++) {
+            latencies[i] = new LatencyHistogram();
+        }
+    }
+
+    private Stats(int stripes) {
+        counters = new StripedCounters(OUTCOMES + 1, stripes);
+    }
+
+    /**
+     * @return statistics only used to carry values, such as a decoded message:
+     * their counters are not striped and their latency histograms are only
+     * created if something is recorded.
+     */
+    public static Stats forValues() {
+        return new Stats(1);
+    }
+
+    /**
+     * @return the latency histogram of the given outcome.
+     */
+    private LatencyHistogram latency(int outcome) {
+        LatencyHistogram histogram = latencies[outcome];
+        return histogram != null ? histogram : createLatency(outcome);
+    }
+
+    private synchronized LatencyHistogram createLatency(int outcome) {
+        if (latencies[outcome] == null) {
+            latencies[outcome] = new LatencyHistogram(1);
+        }
+        return latencies[outcome];
+    }
+
+    /**
+     * Outcome counts and latencies over some interval of the run.
+     */
+    public static class Snapshot {
+        public final long[] counts;
+        public final LatencyHistogram[] latencies;
+
+        Snapshot(long[] counts, LatencyHistogram[] latencies) {
+            this.counts = counts;
+            this.latencies = latencies;
+        }
+
+        public long getCount(int outcome) {
+            return counts[outcome];
+        }
+
+        public long getInvocations() {
+            return counts[INVOCATIONS];
+        }
+
+        public LatencyHistogram getLatency(int outcome) {
+            return latencies[outcome];
+        }
+    }
+
+    static int outcomeOf(long resultCode) {
         if (resultCode == Constants.ERR_INVALID_BOOK) {
-            invalidEntity.incrementAndGet();
+            return INVALID_BOOK;
         } else if (resultCode == Constants.ERR_REVIEWER_OVER_REVIEW_LIMIT) {
-            invalid.incrementAndGet();
-        } else {
-            assert (resultCode == Constants.REVIEW_SUCCESSFUL);
-            accepted.incrementAndGet();
+            return OVER_LIMIT;
         }
+        assert (resultCode == Constants.REVIEW_SUCCESSFUL);
+        return ACCEPTED;
+    }
+
+    public void updateResults(long resultCode) {
+        counters.increment(outcomeOf(resultCode));
+        counters.increment(INVOCATIONS);
+    }
 
-        invocations.incrementAndGet();
+    /**
+     * Records a review along with the latency of the call that posted it.
+     */
+    public void updateResults(long resultCode, long latencyNanos) {
+        int outcome = outcomeOf(resultCode);
+        counters.increment(outcome);
+        counters.increment(INVOCATIONS);
+        latency(outcome).recordNanos(latencyNanos);
     }
 
     public void incrementFailedReviews() {
-        failed.incrementAndGet();
-        invocations.incrementAndGet();
+        counters.increment(FAILED);
+        counters.increment(INVOCATIONS);
+    }
+
+    public void incrementFailedReviews(int count) {
+        counters.add(FAILED, count);
+        counters.add(INVOCATIONS, count);
+    }
+
+    /**
+     * Records a failed review along with the latency of the failed call.
+     */
+    public void recordFailedReview(long latencyNanos) {
+        incrementFailedReviews();
+        latency(FAILED).recordNanos(latencyNanos);
+    }
+
+    /**
+     * @return the counts and latencies since the last call (or since the
+     * start), which becomes the new baseline. Recording goes on meanwhile.
+     */
+    public synchronized Snapshot snapshotAndReset() {
+        long[] counts = counters.getAll();
+        long[] interval = new long[counts.length];
+        for (int i = 0; i < counts.length; i++) {
+            interval[i] = counts[i] - baselineCounts[i];
+        }
+        baselineCounts = counts;
+
+        LatencyHistogram[] intervalLatencies = new LatencyHistogram[OUTCOMES];
+        for (int i = 0; i < OUTCOMES; i++) {
+            LatencyHistogram now = latency(i).copy();
+            intervalLatencies[i] = now.copy();
+            if (baselineLatencies[i] != null) intervalLatencies[i].subtract(baselineLatencies[i]);
+            baselineLatencies[i] = now;
+        }
+        return new Snapshot(interval, intervalLatencies);
+    }
+
+    /**
+     * @return the counts and latencies since the start, without changing the baseline.
+     */
+    public Snapshot snapshot() {
+        LatencyHistogram[] copies = new LatencyHistogram[OUTCOMES];
+        for (int i = 0; i < OUTCOMES; i++) {
+            copies[i] = latency(i).copy();
+        }
+        return new Snapshot(counters.getAll(), copies);
     }
 
     public void printStatistics() {
@@ -89,8 +233,33 @@ public class Stats {
                 " - %,9d Rejected (Maximum Review Count Reached)\n" +
                 " - %,9d Failed (Transaction Error)\n\n";
         StdOut.printf(display, invocationsCompleted,
-                accepted.get(), invalidEntity.get(),
-                invalid.get(), failed.get());
+                getAccepted(), getInvalidEntity(),
+                getInvalid(), getFailed());
+
+        printLatencies();
+    }
+
+    /**
+     * Prints the latency of every outcome, when the driver recorded them.
+     */
+    void printLatencies() {
+        boolean recorded = false;
+        for (LatencyHistogram histogram : latencies) recorded |= histogram != null && histogram.getTotalCount() > 0;
+        if (!recorded) return;
+
+        StdOut.printf("%-40s %12s %9s %9s %9s %11s %9s\n",
+                "Latency by outcome", "Count", "Avg (ms)", "50th (ms)", "99th (ms)", "99.9th (ms)", "Max (ms)");
+        for (int i = 0; i < OUTCOMES; i++) {
+            LatencyHistogram histogram = latency(i);
+            StdOut.printf("%-40s %,12d %9.2f %9.2f %9.2f %11.2f %9.2f\n", OUTCOME_NAMES[i],
+                    histogram.getTotalCount(),
+                    histogram.getAverageLatency(),
+                    histogram.kPercentileLatencyAsDouble(.5),
+                    histogram.kPercentileLatencyAsDouble(.99),
+                    histogram.kPercentileLatencyAsDouble(.999),
+                    histogram.getMaxLatency());
+        }
+        StdOut.println();
     }
 
     public void setStartTS(long startTS) {
@@ -103,9 +272,9 @@ public class Stats {
                 .append("benchmark start time=").append(startTS).append(", current time=").append(getTime())
                 .append(", throughput=").append(throughput).append(", aborts=").append(aborts)
                 .append(", errors=").append(errors).append(", avg latency=").append(latency)
-                .append(", latency =").append(latency_95).append(", accepted reviews=").append(accepted)
-                .append(", bad book reviews=").append(invalidEntity).append(", invocations=").append(invocations)
-                .append(", bad review count reviews=").append(invalid).append(", failed reviews=").append(failed)
+                .append(", latency =").append(latency_95).append(", accepted reviews=").append(getAccepted())
+                .append(", bad book reviews=").append(getInvalidEntity()).append(", invocations=").append(getInvocations())
+                .append(", bad review count reviews=").append(getInvalid()).append(", failed reviews=").append(getFailed())
                 .append("]").toString();
     }
 
@@ -178,35 +347,35 @@ public class Stats {
     }
 
     public long getInvalidEntity() {
-        return invalidEntity.get();
+        return counters.get(INVALID_BOOK);
     }
 
     public void setInvalidEntity(long invalidEntity) {
-        this.invalidEntity = new AtomicLong(invalidEntity);
+        counters.set(INVALID_BOOK, invalidEntity);
     }
 
     public long getInvalid() {
-        return invalid.get();
+        return counters.get(OVER_LIMIT);
     }
 
     public void setInvalid(long invalid) {
-        this.invalid = new AtomicLong(invalid);
+        counters.set(OVER_LIMIT, invalid);
     }
 
     public long getAccepted() {
-        return accepted.get();
+        return counters.get(ACCEPTED);
     }
 
     public void setAccepted(long accepted) {
-        this.accepted = new AtomicLong(accepted);
+        counters.set(ACCEPTED, accepted);
     }
 
     public long getFailed() {
-        return failed.get();
+        return counters.get(FAILED);
     }
 
     public void setFailed(long failed) {
-        this.failed = new AtomicLong(failed);
+        counters.set(FAILED, failed);
     }
 
     public long getStartTS() {
@@ -214,10 +383,10 @@ public class Stats {
     }
 
     public long getInvocations() {
-        return invocations.get();
+        return counters.get(INVOCATIONS);
     }
 
     public void setInvocations(long invocations) {
-        this.invocations = new AtomicLong(invocations);
+        counters.set(INVOCATIONS, invocations);
     }
 }
@@ -26,50 +26,113 @@ package reviewer;
 
 import common.BookReviewsGenerator;
 import common.Constants;
+import common.LoadProfile;
 import models.Stats;
+import common.ReviewSource;
 import common.ReviewerConfig;
-import org.voltdb.client.ClientStats;
+import common.WorkloadFile;
 import org.voltdb.client.ClientStatsContext;
 import org.voltdb.client.ClientStatusListenerExt;
 import org.voltdb.client.ProcCallException;
+import util.LatencyHistogram;
+import util.MetricsText;
+import util.SteadyStateDetector;
 import util.StdOut;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Created by sandeep on 7/16/14.
  */
 public abstract class Benchmark {
+
     public final Stats stats;
     // validated command line configuration
     public ReviewerConfig config;
 
     // Timer for periodic stats printing
     public Timer timer;
-    // Email generator
-    public BookReviewsGenerator reviewsGenerator;
+    // Email generator, or replayed workload file
+    public ReviewSource reviewsGenerator;
 
     // Flags to tell the worker threads to stop or go
     public AtomicBoolean warmupComplete = new AtomicBoolean(false);
     public AtomicBoolean benchmarkComplete = new AtomicBoolean(false);
 
+    // How long the warmup lasted, and whether it ended on a steady state
+    protected long warmupMillis;
+    protected boolean warmupConverged;
+
     // Statistics manager objects from the client
     public ClientStatsContext periodicStatsContext;
     public ClientStatsContext fullStatsContext;
 
+    // Latencies measured from the intended start of every call, kept by
+    // open loop drivers only, so that queueing in the client is not hidden
+    public LatencyHistogram intendedLatency;
+
+    // Clients currently signalling backpressure, since when at least one has
+    // been, and the total time spent under backpressure, guarded by the lock
+    private final Object backpressureLock = new Object();
+    private int backpressuredClients;
+    private long backpressureStartNanos;
+    private long backpressureNanos;
+
+    // Throughput of every periodic display, as {timestamp in ms, txns/sec}
+    public final List<long[]> throughputHistory = Collections.synchronizedList(new ArrayList<long[]>());
+
+    // Time series of the periodic statistics, null unless requested
+    public MetricsLog metricsLog;
+
+    // Live metrics over HTTP, null unless requested
+    public MetricsEndpoint metricsEndpoint;
+
+    // Time varying target rate, null when the drivers run unpaced
+    public LoadProfile loadProfile;
+
+    // Next stream of the seed handed to a review source, 0 being the shared one
+    private final AtomicInteger streams = new AtomicInteger();
+
     public Benchmark(ReviewerConfig config) {
         this.stats = new Stats();
         this.config = config;
 
-        reviewsGenerator = new BookReviewsGenerator(config.books);
+        if ("".equals(config.workloadfile.trim())) {
+            reviewsGenerator = new BookReviewsGenerator(config, streams.getAndIncrement())
+                    .limit(config.reviewsperthread);
+        } else {
+            try {
+                reviewsGenerator = new WorkloadFile.Reader(new File(config.workloadfile));
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        if (!"".equals(config.metricsfile.trim())) {
+            try {
+                metricsLog = new MetricsLog(config.metricsfile);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        if (!"".equals(config.loadprofile.trim())) {
+            loadProfile = new LoadProfile(config.loadprofile);
+        }
 
         StdOut.print(Constants.HORIZONTAL_RULE);
         StdOut.println(" Command Line Configuration");
         StdOut.println(Constants.HORIZONTAL_RULE);
         StdOut.println(config.getConfigDumpString());
+
         if (config.latencyreport) {
             StdOut.println("NOTICE: Option latencyreport is ON for async run, please set a reasonable ratelimit.\n");
         }
@@ -77,6 +140,124 @@ public abstract class Benchmark {
 
     public abstract void runBenchmark() throws Exception;
 
+    /**
+     * Starts serving the metrics, if requested. Called by the drivers once
+     * connected, every structure the page reads being assigned by then.
+     */
+    protected void startMetricsEndpoint() throws IOException {
+        if (config.metricsport > 0) {
+            metricsEndpoint = new MetricsEndpoint(this, config.metricsport);
+        }
+    }
+
+    /**
+     * @return a review source for a thread that wants its own: a new generator
+     * drawing from the next stream of the seed, or the shared (thread safe)
+     * workload file being replayed. Sources created in the same order get the
+     * same streams on every run.
+     */
+    public ReviewSource createReviewSource() {
+        if (reviewsGenerator instanceof WorkloadFile.Reader) {
+            return reviewsGenerator;
+        }
+        return new BookReviewsGenerator(config, streams.getAndIncrement())
+                .limit(config.reviewsperthread);
+    }
+
+    /**
+     * Waits while the drivers warm up: <code>warmup</code> seconds, or with
+     * <code>adaptivewarmup</code>, until the throughput and average latency of
+     * one second intervals are steady, <code>warmup</code> seconds at most.
+     * See {@link #isAdaptiveWarmup()}.
+     */
+    public void awaitWarmup() throws InterruptedException {
+        long start = System.currentTimeMillis();
+        if (!isAdaptiveWarmup()) {
+            Thread.sleep(1000l * config.warmup);
+            endWarmup(start, false);
+            return;
+        }
+
+        SteadyStateDetector detector = newSteadyStateDetector();
+        fetchPeriodicStats();
+        boolean steady = false;
+        for (int second = 0; second < config.warmup && !steady; second++) {
+            Thread.sleep(1000);
+            steady = addInterval(detector);
+        }
+        endWarmup(start, steady);
+    }
+
+    /**
+     * @param record false during the warmup.
+     * @return the procedure posting single reviews, its dry run during the warmup
+     * with <code>warmupdryrun</code>.
+     */
+    public String reviewProcedure(boolean record) {
+        return record || !config.warmupdryrun ? "Review" : "ReviewDryRun";
+    }
+
+    /**
+     * @param record false during the warmup.
+     * @return the procedure posting batches of reviews, its dry run during the
+     * warmup with <code>warmupdryrun</code>.
+     */
+    public String reviewBatchProcedure(boolean record) {
+        return record || !config.warmupdryrun ? "ReviewBatch" : "ReviewBatchDryRun";
+    }
+
+    /**
+     * The dry runs neither run the insert path nor grow the reviews table and
+     * its views, so a warmup with <code>warmupdryrun</code> settles on a read
+     * only workload: it runs for the full <code>warmup</code> seconds instead.
+     *
+     * @return true if the warmup ends on a steady state.
+     */
+    protected boolean isAdaptiveWarmup() {
+        return config.adaptivewarmup && !config.warmupdryrun;
+    }
+
+    protected SteadyStateDetector newSteadyStateDetector() {
+        return new SteadyStateDetector(config.steadywindow, config.steadytolerance, config.steadylatencytolerance);
+    }
+
+    /**
+     * Adds the client throughput and latency since the previous call to the detector.
+     *
+     * @return true once the last intervals are steady.
+     */
+    protected boolean addInterval(SteadyStateDetector detector) {
+        MergedClientStats interval = fetchPeriodicStats();
+        return detector.add(interval.getTxnThroughput(), interval.getAverageLatency());
+    }
+
+    /**
+     * Records how long the warmup started at <code>startMillis</code> lasted.
+     */
+    protected void endWarmup(long startMillis, boolean converged) {
+        warmupMillis = System.currentTimeMillis() - startMillis;
+        warmupConverged = converged;
+        if (isAdaptiveWarmup()) {
+            StdOut.printf("%s after %.1f s.\n", converged ? "Steady state reached" : "No steady state, warmup limit reached",
+                    warmupMillis / 1000.0);
+        }
+    }
+
+    /**
+     * Prints how long the warmup lasted and how it ended.
+     */
+    protected void printWarmup() {
+        StdOut.printf("Warmup:                        %,9.1f s (%s)\n", warmupMillis / 1000.0,
+                !config.adaptivewarmup ? "fixed" : config.warmupdryrun ? "fixed, dry run" : warmupConverged ? "steady state reached" : "no steady state within the limit");
+    }
+
+    /**
+     * @return the measured duration in seconds, the one of the load profile if any.
+     */
+    public int getDuration() {
+        return loadProfile == null ? config.duration : loadProfile.getDuration();
+    }
+
     /**
      * Prints the results of the simulation and statistics
      * about performance.
@@ -84,7 +265,7 @@ public abstract class Benchmark {
      * @throws Exception if anything unexpected happens.
      */
     public synchronized void printResults() throws Exception {
-        ClientStats stats = fullStatsContext.fetch().getStats();
+        MergedClientStats stats = fetchFullStats();
 
         this.stats.printResults(stats.getInvocationsCompleted());
 
@@ -95,18 +276,28 @@ public abstract class Benchmark {
         StdOut.println(" Client Workload Statistics");
         StdOut.println(Constants.HORIZONTAL_RULE);
 
+        printWarmup();
         StdOut.printf("Average throughput:            %,9d txns/sec\n", stats.getTxnThroughput());
-        if (this.config.latencyreport) {
-            StdOut.printf("Average latency:               %,9.2f ms\n", stats.getAverageLatency());
-            StdOut.printf("10th percentile latency:       %,9.2f ms\n", stats.kPercentileLatencyAsDouble(.1));
-            StdOut.printf("25th percentile latency:       %,9.2f ms\n", stats.kPercentileLatencyAsDouble(.25));
-            StdOut.printf("50th percentile latency:       %,9.2f ms\n", stats.kPercentileLatencyAsDouble(.5));
-            StdOut.printf("75th percentile latency:       %,9.2f ms\n", stats.kPercentileLatencyAsDouble(.75));
-            StdOut.printf("90th percentile latency:       %,9.2f ms\n", stats.kPercentileLatencyAsDouble(.9));
-            StdOut.printf("95th percentile latency:       %,9.2f ms\n", stats.kPercentileLatencyAsDouble(.95));
-            StdOut.printf("99th percentile latency:       %,9.2f ms\n", stats.kPercentileLatencyAsDouble(.99));
-            StdOut.printf("99.5th percentile latency:     %,9.2f ms\n", stats.kPercentileLatencyAsDouble(.995));
-            StdOut.printf("99.9th percentile latency:     %,9.2f ms\n", stats.kPercentileLatencyAsDouble(.999));
+        if (this.config.latencyreport || intendedLatency != null) {
+            // the second column, when present, is measured from the intended start of every call
+            if (intendedLatency != null) {
+                StdOut.printf("%-30s %12s %24s\n", "", "Client", "From intended start");
+            }
+            printLatency("Average latency:", stats.getAverageLatency(),
+                    intendedLatency == null ? 0 : intendedLatency.getAverageLatency());
+            printPercentile("10th percentile latency:", .1, stats);
+            printPercentile("25th percentile latency:", .25, stats);
+            printPercentile("50th percentile latency:", .5, stats);
+            printPercentile("75th percentile latency:", .75, stats);
+            printPercentile("90th percentile latency:", .9, stats);
+            printPercentile("95th percentile latency:", .95, stats);
+            printPercentile("99th percentile latency:", .99, stats);
+            printPercentile("99.5th percentile latency:", .995, stats);
+            printPercentile("99.9th percentile latency:", .999, stats);
+            if (intendedLatency != null) {
+                printPercentile("99.99th percentile latency:", .9999, stats);
+                printLatency("Maximum latency:", stats.kPercentileLatencyAsDouble(1), intendedLatency.getMaxLatency());
+            }
 
             StdOut.print("\n" + Constants.HORIZONTAL_RULE);
             StdOut.println(" System Server Statistics");
@@ -119,14 +310,146 @@ public abstract class Benchmark {
             StdOut.println(stats.latencyHistoReport());
         }
 
+        printHostStatistics();
+        printRecoveryStatistics();
+
+        if (loadProfile != null) {
+            loadProfile.printResults();
+        }
+
         getSummaryCSV();
+
+        if (metricsLog != null) {
+            metricsLog.close();
+        }
+        if (metricsEndpoint != null) {
+            metricsEndpoint.stop();
+        }
     }
 
     /**
-     * Provides a callback to be notified on node failure. This example only
-     * logs the event.
+     * @return the live review outcomes and latencies, client statistics and
+     * JVM figures, in the Prometheus text format.
+     */
+    public String getMetricsText() {
+        MetricsText text = new MetricsText();
+
+        Stats.Snapshot snapshot = this.stats.snapshot();
+        for (int i = 0; i < Stats.OUTCOMES; i++) {
+            text.counter("reviewer_reviews_total", "Reviews recorded since the end of the warmup, by outcome.",
+                    snapshot.getCount(i), "outcome", Stats.OUTCOME_KEYS[i]);
+        }
+        double[] quantiles = {.5, .9, .99, .999};
+        for (int i = 0; i < Stats.OUTCOMES; i++) {
+            LatencyHistogram latency = snapshot.getLatency(i);
+            for (double quantile : quantiles) {
+                text.gauge("reviewer_review_latency_seconds", "Review latency quantiles since the end of the warmup, by outcome.",
+                        latency.kPercentileLatencyAsDouble(quantile) / 1000.0,
+                        "outcome", Stats.OUTCOME_KEYS[i], "quantile", Double.toString(quantile));
+            }
+        }
+
+        MergedClientStats clientStats = fetchFullStats();
+        text.counter("reviewer_client_invocations_total", "Procedure calls completed since the end of the warmup.",
+                clientStats.getInvocationsCompleted());
+        text.counter("reviewer_client_aborts_total", "Procedure calls aborted.", clientStats.getInvocationAborts());
+        text.counter("reviewer_client_errors_total", "Procedure calls failed.", clientStats.getInvocationErrors());
+        text.counter("reviewer_client_timeouts_total", "Procedure calls timed out.", clientStats.getInvocationTimeouts());
+        text.gauge("reviewer_client_throughput", "Average procedure calls per second since the end of the warmup.",
+                clientStats.getTxnThroughput());
+        text.gauge("reviewer_client_latency_average_seconds", "Average procedure call latency.",
+                clientStats.getAverageLatency() / 1000.0);
+        for (double quantile : quantiles) {
+            text.gauge("reviewer_client_latency_seconds", "Procedure call latency quantiles, upper bound across clients.",
+                    clientStats.kPercentileLatencyAsDouble(quantile) / 1000.0, "quantile", Double.toString(quantile));
+        }
+        text.counter("reviewer_client_backpressure_seconds_total", "Time spent with a client under backpressure.",
+                getBackpressureNanos() / 1e9);
+
+        return text.jvm().toString();
+    }
+
+    /**
+     * Prints the throughput and latency of every server host, when the driver can tell them apart.
+     */
+    protected void printHostStatistics() {
+    }
+
+    /**
+     * Prints how the driver recovered from lost connections, if it reconnects them.
+     */
+    protected void printRecoveryStatistics() {
+    }
+
+    void printPercentile(String label, double percentile, MergedClientStats stats) {
+        printLatency(label, stats.kPercentileLatencyAsDouble(percentile),
+                intendedLatency == null ? 0 : intendedLatency.kPercentileLatencyAsDouble(percentile));
+    }
+
+    void printLatency(String label, double latency, double fromIntendedStart) {
+        if (intendedLatency == null) {
+            StdOut.printf("%-30s %,9.2f ms\n", label, latency);
+        } else {
+            StdOut.printf("%-30s %,9.2f ms %,21.2f ms\n", label, latency, fromIntendedStart);
+        }
+    }
+
+    /**
+     * Blocks while any client signals backpressure, rather than letting the
+     * next call block inside the client with its queue full. Gives up after
+     * 100 ms, in case the end of the backpressure is never signalled.
+     *
+     * @return the time spent waiting, in nanoseconds.
+     */
+    public long awaitBackpressureRelief() throws InterruptedException {
+        long start = System.nanoTime();
+        long deadline = start + 100000000L;
+        synchronized (backpressureLock) {
+            while (backpressuredClients > 0 && !benchmarkComplete.get() && System.nanoTime() < deadline) {
+                backpressureLock.wait(10);
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * @return the time spent with at least one client under backpressure since
+     * the last reset, in nanoseconds.
+     */
+    public long getBackpressureNanos() {
+        synchronized (backpressureLock) {
+            long total = backpressureNanos;
+            if (backpressuredClients > 0) total += System.nanoTime() - backpressureStartNanos;
+            return total;
+        }
+    }
+
+    public void resetBackpressureNanos() {
+        synchronized (backpressureLock) {
+            backpressureNanos = 0;
+            backpressureStartNanos = System.nanoTime();
+        }
+    }
+
+    /**
+     * Provides a callback to be notified on node failure, which is only
+     * logged, and on backpressure, whose duration is tracked.
      */
     public class StatusListener extends ClientStatusListenerExt {
+        @Override
+        public void backpressure(boolean status) {
+            synchronized (backpressureLock) {
+                if (status) {
+                    if (backpressuredClients++ == 0) backpressureStartNanos = System.nanoTime();
+                } else if (backpressuredClients > 0) {
+                    if (--backpressuredClients == 0) {
+                        backpressureNanos += System.nanoTime() - backpressureStartNanos;
+                        backpressureLock.notifyAll();
+                    }
+                }
+            }
+        }
+
         @Override
         public void connectionLost(String hostname, int port,
                                    int connectionsLeft, DisconnectCause cause) {
@@ -134,10 +457,18 @@ public abstract class Benchmark {
             if (!benchmarkComplete.get()) {
                 System.err.printf("Connection to %s:%d was lost.\n", hostname,
                         port);
+                onConnectionLost(hostname, port);
             }
         }
     }
 
+    /**
+     * Called when a connection is lost while the benchmark is active. This
+     * example only logs the event, drivers able to reconnect do so.
+     */
+    protected void onConnectionLost(String hostname, int port) {
+    }
+
     /**
      * Create a Timer task to display performance data on the Review procedure
      * It calls printStatistics() every displayInterval seconds
@@ -160,10 +491,14 @@ public abstract class Benchmark {
      * periodically during a benchmark.
      */
     public synchronized void printStatistics() {
-        ClientStats stats = periodicStatsContext.fetchAndResetBaseline().getStats();
+        MergedClientStats stats = fetchPeriodicStats();
 
         this.stats.setLatencyReport(config.latencyreport).setEndTS(stats.getEndTimestamp());
         this.stats.setThroughput(stats.getTxnThroughput()).setAborts(stats.getInvocationAborts());
+        throughputHistory.add(new long[]{stats.getEndTimestamp(), stats.getTxnThroughput()});
+        if (metricsLog != null) {
+            metricsLog.write(stats.getEndTimestamp(), this.stats.getStartTS(), stats, this.stats.snapshotAndReset());
+        }
         this.stats.setErrors(stats.getInvocationErrors());
         this.stats.setLatency(stats.getAverageLatency());
         this.stats.setLatency_95(stats.kPercentileLatencyAsDouble(0.95));
@@ -171,6 +506,20 @@ public abstract class Benchmark {
         this.stats.printStatistics();
     }
 
+    /**
+     * @return the client statistics since the last periodic display, resetting them.
+     */
+    protected MergedClientStats fetchPeriodicStats() {
+        return new MergedClientStats(periodicStatsContext.fetchAndResetBaseline().getStats());
+    }
+
+    /**
+     * @return the client statistics since the end of the warmup.
+     */
+    protected MergedClientStats fetchFullStats() {
+        return new MergedClientStats(fullStatsContext.fetch().getStats());
+    }
+
     protected abstract void getSummaryCSV() throws IOException;
 
     public abstract void getWinner() throws IOException, ProcCallException;
@@ -0,0 +1,177 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Sandeep Kunkunuru
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package reviewer;
+
+import org.voltdb.client.ClientStats;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Combines the {@link ClientStats} of several clients driving the same benchmark.
+ *
+ * Counters and throughputs add up and averages are weighted by the number of
+ * completed invocations. The client library keeps its latency histogram to
+ * itself, so a percentile of several clients is the highest of their
+ * percentiles: an upper bound, exact when there is a single client.
+ */
+public class MergedClientStats {
+    private final List<ClientStats> stats;
+
+    public MergedClientStats(ClientStats... stats) {
+        this(Arrays.asList(stats));
+    }
+
+    public MergedClientStats(List<ClientStats> stats) {
+        this.stats = stats;
+    }
+
+    public int getClientCount() {
+        return stats.size();
+    }
+
+    public long getStartTimestamp() {
+        long start = Long.MAX_VALUE;
+        for (ClientStats s : stats) start = Math.min(start, s.getStartTimestamp());
+        return start;
+    }
+
+    public long getEndTimestamp() {
+        long end = 0;
+        for (ClientStats s : stats) end = Math.max(end, s.getEndTimestamp());
+        return end;
+    }
+
+    public long getDuration() {
+        return getEndTimestamp() - getStartTimestamp();
+    }
+
+    public long getTxnThroughput() {
+        long throughput = 0;
+        for (ClientStats s : stats) throughput += s.getTxnThroughput();
+        return throughput;
+    }
+
+    public long getInvocationsCompleted() {
+        long invocations = 0;
+        for (ClientStats s : stats) invocations += s.getInvocationsCompleted();
+        return invocations;
+    }
+
+    public long getInvocationAborts() {
+        long aborts = 0;
+        for (ClientStats s : stats) aborts += s.getInvocationAborts();
+        return aborts;
+    }
+
+    public long getInvocationErrors() {
+        long errors = 0;
+        for (ClientStats s : stats) errors += s.getInvocationErrors();
+        return errors;
+    }
+
+    public long getInvocationTimeouts() {
+        long timeouts = 0;
+        for (ClientStats s : stats) timeouts += s.getInvocationTimeouts();
+        return timeouts;
+    }
+
+    public double getAverageLatency() {
+        double weighted = 0;
+        long invocations = 0;
+        for (ClientStats s : stats) {
+            weighted += s.getAverageLatency() * s.getInvocationsCompleted();
+            invocations += s.getInvocationsCompleted();
+        }
+        return invocations == 0 ? 0 : weighted / invocations;
+    }
+
+    public double getAverageInternalLatency() {
+        double weighted = 0;
+        long invocations = 0;
+        for (ClientStats s : stats) {
+            weighted += s.getAverageInternalLatency() * s.getInvocationsCompleted();
+            invocations += s.getInvocationsCompleted();
+        }
+        return invocations == 0 ? 0 : weighted / invocations;
+    }
+
+    public double kPercentileLatencyAsDouble(double percentile) {
+        double latency = 0;
+        for (ClientStats s : stats) latency = Math.max(latency, s.kPercentileLatencyAsDouble(percentile));
+        return latency;
+    }
+
+    /**
+     * @return the lowest latency of any client, the lowest percentile being a
+     * true minimum rather than an upper bound. Idle clients are left out.
+     */
+    public double getMinLatency() {
+        double latency = Double.MAX_VALUE;
+        for (ClientStats s : stats) {
+            if (s.getInvocationsCompleted() > 0) latency = Math.min(latency, s.kPercentileLatencyAsDouble(0.0));
+        }
+        return latency == Double.MAX_VALUE ? 0 : latency;
+    }
+
+    public String latencyHistoReport() {
+        if (stats.size() == 1) {
+            return stats.get(0).latencyHistoReport();
+        }
+
+        StringBuilder report = new StringBuilder();
+        for (int i = 0; i < stats.size(); i++) {
+            report.append("Client ").append(i).append(":\n").append(stats.get(i).latencyHistoReport()).append("\n");
+        }
+        return report.toString();
+    }
+
+    /**
+     * Appends a row laid out like the one written by Client.writeSummaryCSV.
+     */
+    public void writeSummaryCSV(String path) throws IOException {
+        FileWriter fw = new FileWriter(path, true);
+        try {
+            fw.append(String.format("%d,%d,%d,%.2f,%.2f,%.2f,%.2f,%.2f,%.2f,%.2f,%d,%d,%d\n",
+                    getStartTimestamp(),
+                    getDuration(),
+                    getInvocationsCompleted(),
+                    getMinLatency(),
+                    kPercentileLatencyAsDouble(1.0),
+                    kPercentileLatencyAsDouble(0.95),
+                    kPercentileLatencyAsDouble(0.99),
+                    kPercentileLatencyAsDouble(0.999),
+                    kPercentileLatencyAsDouble(0.9999),
+                    kPercentileLatencyAsDouble(0.99999),
+                    getInvocationErrors(),
+                    getInvocationAborts(),
+                    getInvocationTimeouts()));
+        } finally {
+            fw.close();
+        }
+    }
+}
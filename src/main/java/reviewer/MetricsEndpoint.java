@@ -0,0 +1,75 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Sandeep Kunkunuru
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package reviewer;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import util.MetricsText;
+import util.StdOut;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+
+/**
+ * Serves the live metrics of a benchmark at <code>http://host:port/metrics</code>,
+ * from the JDK's embedded HTTP server, so that runs can be scraped and charted
+ * while they go. Every request builds the page from the live structures, none
+ * of which is locked by the callbacks recording into them.
+ */
+public class MetricsEndpoint {
+    private final HttpServer server;
+
+    public MetricsEndpoint(final Benchmark benchmark, int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext("/metrics", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                byte[] body;
+                try {
+                    body = benchmark.getMetricsText().getBytes("UTF-8");
+                    exchange.getResponseHeaders().set("Content-Type", MetricsText.CONTENT_TYPE);
+                    exchange.sendResponseHeaders(200, body.length);
+                } catch (RuntimeException e) {
+                    body = e.toString().getBytes("UTF-8");
+                    exchange.sendResponseHeaders(500, body.length);
+                }
+                OutputStream out = exchange.getResponseBody();
+                try {
+                    out.write(body);
+                } finally {
+                    out.close();
+                }
+            }
+        });
+        server.start();
+        StdOut.printf("Serving metrics at http://localhost:%d/metrics\n\n", port);
+    }
+
+    public void stop() {
+        server.stop(0);
+    }
+}
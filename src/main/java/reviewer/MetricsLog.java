@@ -0,0 +1,78 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Sandeep Kunkunuru
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package reviewer;
+
+import models.Stats;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * Time series of the periodic statistics, one tab separated line per display
+ * interval: timestamp and elapsed time in ms, throughput, aborts, errors,
+ * then the invocations and outcome counts of the interval, and finally the
+ * latency histogram of every outcome in {@link util.LatencyHistogram#encode()} form.
+ *
+ * Every line is flushed as it is written, so the file can be followed during
+ * the run and survives a killed benchmark. {@link MetricsReader} turns it
+ * into per interval percentiles.
+ */
+public class MetricsLog {
+    static final String HEADER = "# reviewer metrics v1: timestamp elapsed_ms throughput aborts errors"
+            + " invocations accepted invalid_book over_limit failed"
+            + " latency_accepted latency_invalid_book latency_over_limit latency_failed";
+
+    private final PrintWriter out;
+
+    public MetricsLog(String path) throws IOException {
+        out = new PrintWriter(new BufferedWriter(new FileWriter(path)));
+        out.println(HEADER);
+        out.flush();
+    }
+
+    public synchronized void write(long timestamp, long startTS, MergedClientStats clientStats, Stats.Snapshot snapshot) {
+        StringBuilder line = new StringBuilder();
+        line.append(timestamp).append('\t').append(timestamp - startTS)
+                .append('\t').append(clientStats.getTxnThroughput())
+                .append('\t').append(clientStats.getInvocationAborts())
+                .append('\t').append(clientStats.getInvocationErrors())
+                .append('\t').append(snapshot.getInvocations());
+        for (int i = 0; i < Stats.OUTCOMES; i++) {
+            line.append('\t').append(snapshot.getCount(i));
+        }
+        for (int i = 0; i < Stats.OUTCOMES; i++) {
+            line.append('\t').append(snapshot.getLatency(i).encode());
+        }
+
+        out.println(line);
+        out.flush();
+    }
+
+    public synchronized void close() {
+        out.close();
+    }
+}
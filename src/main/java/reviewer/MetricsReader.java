@@ -0,0 +1,95 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Sandeep Kunkunuru
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package reviewer;
+
+import models.Stats;
+import util.LatencyHistogram;
+import util.StdOut;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+
+/**
+ * Prints the per interval throughput, outcomes and latency percentiles of a
+ * {@link MetricsLog} file, latencies being those of every outcome together,
+ * or of a single one when its name (accepted, invalid_book, over_limit or
+ * failed) is given after the file.
+ */
+public class MetricsReader {
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("Usage: MetricsReader metricsfile [accepted|invalid_book|over_limit|failed]");
+            System.exit(-1);
+        }
+
+        int outcome = -1;
+        if (args.length == 2) {
+            for (int i = 0; i < Stats.OUTCOME_KEYS.length; i++) {
+                if (Stats.OUTCOME_KEYS[i].equals(args[1])) outcome = i;
+            }
+            if (outcome < 0) {
+                System.err.printf("Unknown outcome %s.\n", args[1]);
+                System.exit(-1);
+            }
+        }
+
+        StdOut.printf("Latencies of %s reviews\n", outcome < 0 ? "all" : Stats.OUTCOME_NAMES[outcome].toLowerCase());
+        StdOut.printf("%9s %10s %8s %10s %10s %10s %9s %9s %9s %11s %9s\n", "Time (s)", "Txns/sec", "Errors",
+                "Accepted", "Rejected", "Failed", "Avg (ms)", "50th (ms)", "99th (ms)", "99.9th (ms)", "Max (ms)");
+
+        BufferedReader in = new BufferedReader(new FileReader(args[0]));
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.startsWith("#") || line.trim().isEmpty()) continue;
+                String[] fields = line.split("\t");
+
+                int histograms = 6 + Stats.OUTCOMES;
+                LatencyHistogram latency = new LatencyHistogram();
+                for (int i = 0; i < Stats.OUTCOMES; i++) {
+                    if (outcome < 0 || outcome == i) {
+                        latency.add(LatencyHistogram.decode(fields[histograms + i]));
+                    }
+                }
+
+                StdOut.printf("%9.1f %,10d %,8d %,10d %,10d %,10d %9.2f %9.2f %9.2f %11.2f %9.2f\n",
+                        Long.parseLong(fields[1]) / 1000.0,
+                        Long.parseLong(fields[2]),
+                        Long.parseLong(fields[3]) + Long.parseLong(fields[4]),
+                        Long.parseLong(fields[6 + Stats.ACCEPTED]),
+                        Long.parseLong(fields[6 + Stats.INVALID_BOOK]) + Long.parseLong(fields[6 + Stats.OVER_LIMIT]),
+                        Long.parseLong(fields[6 + Stats.FAILED]),
+                        latency.getAverageLatency(),
+                        latency.kPercentileLatencyAsDouble(.5),
+                        latency.kPercentileLatencyAsDouble(.99),
+                        latency.kPercentileLatencyAsDouble(.999),
+                        latency.getMaxLatency());
+            }
+        } finally {
+            in.close();
+        }
+    }
+}
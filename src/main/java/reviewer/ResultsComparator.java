@@ -0,0 +1,237 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Sandeep Kunkunuru
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package reviewer;
+
+import common.Constants;
+import common.ReviewerConfig;
+import models.Stats;
+import util.LatencyHistogram;
+import util.StdOut;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares the <code>candidate</code> runs against the <code>baseline</code>
+ * runs and exits with 1 when throughput drops by more than
+ * <code>maxthroughputdrop</code> percent, or a latency percentile rises by
+ * more than <code>maxlatencyrise</code> percent.
+ *
+ * Runs are read from summary CSV files (statsfile, one row per run) or from
+ * {@link MetricsLog} files, every display interval of which counts as a sample.
+ * Both sides should be of the same kind. A change beyond its budget only
+ * fails the check when it also exceeds twice its standard error, estimated
+ * from the spread of the samples. Otherwise it is reported as noise and the
+ * tool exits with 2, asking for more runs.
+ */
+public class ResultsComparator {
+    static final String[] METRICS = {
+            "Throughput (txns/sec)", "95th latency (ms)", "99th latency (ms)", "99.9th latency (ms)"};
+    static final int THROUGHPUT = 0;
+    // percentiles of the latency metrics following throughput
+    static final double[] PERCENTILES = {.95, .99, .999};
+
+    // a change is significant beyond this many standard errors
+    static final double SIGNIFICANCE = 2.0;
+
+    static final int PASSED = 0;
+    static final int REGRESSED = 1;
+    static final int INCONCLUSIVE = 2;
+
+    /**
+     * Values of one metric over the samples of one side.
+     */
+    static class Series {
+        final List<Double> values = new ArrayList<Double>();
+
+        int count() {
+            return values.size();
+        }
+
+        double mean() {
+            double sum = 0;
+            for (double value : values) sum += value;
+            return sum / values.size();
+        }
+
+        /**
+         * @return the variance of the mean, 0 when a single sample gives no estimate.
+         */
+        double varianceOfMean() {
+            int n = values.size();
+            if (n < 2) return 0;
+            double mean = mean();
+            double sum = 0;
+            for (double value : values) sum += (value - mean) * (value - mean);
+            return sum / (n - 1) / n;
+        }
+    }
+
+    static Series[] newSide() {
+        Series[] side = new Series[METRICS.length];
+        for (int i = 0; i < side.length; i++) {
+            side[i] = new Series();
+        }
+        return side;
+    }
+
+    /**
+     * Adds the samples of every comma separated file to the given side.
+     */
+    static void load(String files, Series[] side) throws IOException {
+        for (String file : files.split(",")) {
+            if (file.trim().isEmpty()) continue;
+
+            BufferedReader in = new BufferedReader(new FileReader(file.trim()));
+            try {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    if (line.startsWith("#") || line.trim().isEmpty()) continue;
+                    if (line.indexOf('\t') >= 0) {
+                        addInterval(line.split("\t"), side);
+                    } else {
+                        addSummary(line.split(","), side);
+                    }
+                }
+            } finally {
+                in.close();
+            }
+        }
+    }
+
+    /**
+     * Row written by writeSummaryCSV: start, duration (ms), invocations,
+     * min, max, 95th, 99th and 99.9th latencies (ms), ...
+     */
+    static void addSummary(String[] fields, Series[] side) {
+        double duration = Double.parseDouble(fields[1]);
+        if (duration <= 0) return;
+
+        side[THROUGHPUT].values.add(Double.parseDouble(fields[2]) * 1000 / duration);
+        side[1].values.add(Double.parseDouble(fields[5]));
+        side[2].values.add(Double.parseDouble(fields[6]));
+        side[3].values.add(Double.parseDouble(fields[7]));
+    }
+
+    /**
+     * Line of a metrics log, latencies being those of every outcome together.
+     */
+    static void addInterval(String[] fields, Series[] side) {
+        side[THROUGHPUT].values.add(Double.parseDouble(fields[2]));
+
+        int histograms = 6 + Stats.OUTCOMES;
+        LatencyHistogram latency = new LatencyHistogram();
+        for (int i = 0; i < Stats.OUTCOMES; i++) {
+            latency.add(LatencyHistogram.decode(fields[histograms + i]));
+        }
+        // an interval without any response has no latency
+        if (latency.getTotalCount() == 0) return;
+
+        for (int i = 0; i < PERCENTILES.length; i++) {
+            side[THROUGHPUT + 1 + i].values.add(latency.kPercentileLatencyAsDouble(PERCENTILES[i]));
+        }
+    }
+
+    /**
+     * Prints one line per metric and returns the overall verdict.
+     */
+    static int compare(Series[] baseline, Series[] candidate, ReviewerConfig config) {
+        StdOut.printf("%-22s %12s %12s %9s %9s %9s  %s\n",
+                "Metric", "Baseline", "Candidate", "Delta %", "Noise %", "Budget %", "Verdict");
+
+        int result = PASSED;
+        for (int i = 0; i < METRICS.length; i++) {
+            Series b = baseline[i];
+            Series c = candidate[i];
+            if (b.count() == 0 || c.count() == 0) {
+                StdOut.printf("%-22s %12s %12s\n", METRICS[i], b.count() == 0 ? "-" : "", c.count() == 0 ? "-" : "");
+                continue;
+            }
+
+            double base = b.mean();
+            double delta = (c.mean() - base) / base * 100;
+            double noise = SIGNIFICANCE * Math.sqrt(b.varianceOfMean() + c.varianceOfMean()) / base * 100;
+            boolean estimated = b.count() > 1 || c.count() > 1;
+
+            // throughput regresses when it drops, latencies when they rise
+            double worse = i == THROUGHPUT ? -delta : delta;
+            double budget = i == THROUGHPUT ? config.maxthroughputdrop : config.maxlatencyrise;
+
+            String verdict;
+            if (worse <= budget) {
+                verdict = -worse > budget && -worse > noise ? "improved" : "ok";
+            } else if (worse > noise) {
+                verdict = estimated ? "REGRESSION" : "REGRESSION (single runs, no noise estimate)";
+                result = REGRESSED;
+            } else {
+                verdict = "within noise, repeat runs";
+                if (result == PASSED) result = INCONCLUSIVE;
+            }
+
+            StdOut.printf("%-22s %,12.2f %,12.2f %+9.2f %9s %9.2f  %s\n", METRICS[i], base, c.mean(), delta,
+                    estimated ? String.format("%.2f", noise) : "-", budget, verdict);
+        }
+        return result;
+    }
+
+    public static void main(String[] args) throws IOException {
+        // create a configuration from the arguments
+        ReviewerConfig config = new ReviewerConfig();
+        config.parse(ResultsComparator.class.getName(), args);
+
+        if ("".equals(config.baseline.trim()) || "".equals(config.candidate.trim())) {
+            config.exitWithMessageAndUsage("baseline and candidate must be set");
+        }
+
+        Series[] baseline = newSide();
+        Series[] candidate = newSide();
+        load(config.baseline, baseline);
+        load(config.candidate, candidate);
+        if (baseline[THROUGHPUT].count() == 0 || candidate[THROUGHPUT].count() == 0) {
+            config.exitWithMessageAndUsage("baseline and candidate must both contain runs");
+        }
+
+        StdOut.print(Constants.HORIZONTAL_RULE);
+        StdOut.println(" Regression Check");
+        StdOut.println(Constants.HORIZONTAL_RULE);
+        StdOut.printf("Baseline:  %s (%d samples)\n", config.baseline, baseline[THROUGHPUT].count());
+        StdOut.printf("Candidate: %s (%d samples)\n\n", config.candidate, candidate[THROUGHPUT].count());
+
+        int result = compare(baseline, candidate, config);
+
+        StdOut.println();
+        if (result == REGRESSED) {
+            StdOut.println("FAILED: the candidate exceeds the regression budget.");
+        } else if (result == INCONCLUSIVE) {
+            StdOut.println("INCONCLUSIVE: changes beyond the budget are within the noise, add runs to both sides.");
+        } else {
+            StdOut.println("PASSED: the candidate is within the regression budget.");
+        }
+        System.exit(result);
+    }
+}
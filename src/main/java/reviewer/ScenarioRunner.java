@@ -0,0 +1,325 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Sandeep Kunkunuru
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package reviewer;
+
+import common.Constants;
+import common.ReviewerConfig;
+import util.StdOut;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * Runs every combination of a scenario file in sequence, each in its own JVM,
+ * and prints one table comparing them.
+ *
+ * A scenario is a properties file. <code>driver</code> picks the benchmark
+ * (async, sync, jdbc, openloop or mixed), <code>jvmargs</code> the options of
+ * its JVM and <code>outputdir</code> where the logs and summaries of the runs
+ * go. Every other key is a {@link ReviewerConfig} option given to every run,
+ * except the <code>sweep.</code> ones: their values, separated by |, are
+ * combined with the values of every other sweep. For instance
+ * <pre>
+ *   driver = async
+ *   duration = 60
+ *   sweep.submitters = 1 | 2 | 4
+ *   sweep.ratelimit = 50000 | 100000
+ * </pre>
+ * runs six benchmarks. The driver can be swept too. Sweeps vary in the
+ * alphabetical order of their keys, the last one fastest.
+ */
+public class ScenarioRunner {
+    static final String SWEEP = "sweep.";
+    static final String DRIVER = "driver";
+    static final String JVM_ARGS = "jvmargs";
+    static final String OUTPUT_DIR = "outputdir";
+
+    static final Map<String, String> DRIVERS = new LinkedHashMap<String, String>();
+
+    static {
+        DRIVERS.put("async", "reviewer.native_api.AsyncBenchmark");
+        DRIVERS.put("sync", "reviewer.native_api.SyncBenchmark");
+        DRIVERS.put("jdbc", "reviewer.jdbc.JDBCBenchmark");
+        DRIVERS.put("openloop", "reviewer.native_api.OpenLoopBenchmark");
+        DRIVERS.put("mixed", "reviewer.native_api.MixedBenchmark");
+    }
+
+    // options given to every run, and the values of every sweep
+    final Map<String, String> fixed = new TreeMap<String, String>();
+    final Map<String, String[]> sweeps = new TreeMap<String, String[]>();
+    final String jvmArgs;
+    final File outputDir;
+
+    ScenarioRunner(File file) throws IOException {
+        Properties scenario = new Properties();
+        FileReader in = new FileReader(file);
+        try {
+            scenario.load(in);
+        } finally {
+            in.close();
+        }
+
+        jvmArgs = scenario.getProperty(JVM_ARGS, "").trim();
+        outputDir = new File(scenario.getProperty(OUTPUT_DIR, "scenario-" + file.getName().replaceAll("\\.[^.]*$", "")));
+
+        for (String key : scenario.stringPropertyNames()) {
+            if (JVM_ARGS.equals(key) || OUTPUT_DIR.equals(key)) continue;
+
+            String value = scenario.getProperty(key).trim();
+            if (key.startsWith(SWEEP)) {
+                String name = key.substring(SWEEP.length());
+                checkOption(name);
+                String[] values = value.split("\\|");
+                for (int i = 0; i < values.length; i++) values[i] = values[i].trim();
+                sweeps.put(name, values);
+            } else {
+                checkOption(key);
+                fixed.put(key, value);
+            }
+        }
+        if (!fixed.containsKey(DRIVER) && !sweeps.containsKey(DRIVER)) {
+            throw new IllegalArgumentException("Scenario " + file + " has no driver");
+        }
+        List<String> drivers = new ArrayList<String>();
+        if (fixed.containsKey(DRIVER)) drivers.add(fixed.get(DRIVER));
+        if (sweeps.containsKey(DRIVER)) drivers.addAll(Arrays.asList(sweeps.get(DRIVER)));
+        for (String driver : drivers) {
+            if (!DRIVERS.containsKey(driver)) {
+                throw new IllegalArgumentException("Unknown driver " + driver + ", expected one of " + DRIVERS.keySet());
+            }
+        }
+    }
+
+    /**
+     * Rejects keys which are neither a driver nor a ReviewerConfig option,
+     * rather than finding out in the middle of the night.
+     */
+    static void checkOption(String name) {
+        if (DRIVER.equals(name)) return;
+        if ("statsfile".equals(name)) {
+            throw new IllegalArgumentException("statsfile is set by the scenario runner");
+        }
+        try {
+            ReviewerConfig.class.getField(name);
+        } catch (NoSuchFieldException e) {
+            throw new IllegalArgumentException("Unknown option in scenario: " + name);
+        }
+    }
+
+    /**
+     * @return the options of every run, the sweeps varying in key order, the last one fastest.
+     */
+    List<Map<String, String>> combinations() {
+        List<Map<String, String>> runs = new ArrayList<Map<String, String>>();
+        runs.add(new TreeMap<String, String>(fixed));
+        for (Map.Entry<String, String[]> sweep : sweeps.entrySet()) {
+            List<Map<String, String>> expanded = new ArrayList<Map<String, String>>();
+            for (Map<String, String> run : runs) {
+                for (String value : sweep.getValue()) {
+                    Map<String, String> options = new TreeMap<String, String>(run);
+                    options.put(sweep.getKey(), value);
+                    expanded.add(options);
+                }
+            }
+            runs = expanded;
+        }
+        return runs;
+    }
+
+    /**
+     * @return the command line options of the driver for the given run.
+     */
+    static List<String> arguments(Map<String, String> options, File stats) {
+        List<String> arguments = new ArrayList<String>();
+        for (Map.Entry<String, String> option : options.entrySet()) {
+            if (DRIVER.equals(option.getKey())) continue;
+            arguments.add("--" + option.getKey() + "=" + option.getValue());
+        }
+        arguments.add("--statsfile=" + stats.getPath());
+        return arguments;
+    }
+
+    /**
+     * Parses and validates the options of every run like its driver will, so
+     * that a bad value stops the scenario before its first run.
+     */
+    void checkRuns() {
+        List<Map<String, String>> runs = combinations();
+        for (int i = 0; i < runs.size(); i++) {
+            List<String> arguments = arguments(runs.get(i), new File(outputDir, "run-" + (i + 1) + ".csv"));
+            try {
+                ReviewerConfig.check(arguments.toArray(new String[arguments.size()]));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Run " + (i + 1) + " " + runs.get(i) + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Runs one benchmark in a child JVM, its output going to <code>log</code>.
+     *
+     * @return the exit code of the child JVM.
+     */
+    int run(Map<String, String> options, File stats, File log) throws IOException, InterruptedException {
+        String driver = DRIVERS.get(options.get(DRIVER));
+
+        List<String> command = new ArrayList<String>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        if (!jvmArgs.isEmpty()) {
+            for (String arg : jvmArgs.split("\\s+")) command.add(arg);
+        }
+        String log4j = System.getProperty("log4j.configuration");
+        if (log4j != null) command.add("-Dlog4j.configuration=" + log4j);
+        command.add("-classpath");
+        command.add(System.getProperty("java.class.path"));
+        command.add(driver);
+        command.addAll(arguments(options, stats));
+
+        Process process = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(log)
+                .start();
+        return process.waitFor();
+    }
+
+    /**
+     * @return the last row of a summary CSV file, null if there is none.
+     */
+    static String[] readSummary(File stats) throws IOException {
+        if (!stats.exists()) return null;
+
+        String[] last = null;
+        BufferedReader in = new BufferedReader(new FileReader(stats));
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (!line.trim().isEmpty()) last = line.split(",");
+            }
+        } finally {
+            in.close();
+        }
+        return last;
+    }
+
+    void runAll() throws IOException, InterruptedException {
+        outputDir.mkdirs();
+        List<Map<String, String>> runs = combinations();
+
+        StdOut.print(Constants.HORIZONTAL_RULE);
+        StdOut.printf(" Scenario: %,d runs, output in %s\n", runs.size(), outputDir);
+        StdOut.println(Constants.HORIZONTAL_RULE);
+
+        // one column per sweep, wide enough for its name and values
+        List<String> columns = new ArrayList<String>(sweeps.keySet());
+        StringBuilder header = new StringBuilder(String.format("%4s", "Run"));
+        StringBuilder format = new StringBuilder("%4d");
+        for (String column : columns) {
+            int width = column.length();
+            for (String value : sweeps.get(column)) width = Math.max(width, value.length());
+            header.append(String.format(" %-" + width + "s", column));
+            format.append(" %-").append(width).append("s");
+        }
+        header.append(String.format(" %12s %9s %9s %11s %9s %8s  %s", "Txns/sec", "95th (ms)", "99th (ms)",
+                "99.9th (ms)", "Max (ms)", "Errors", "Status"));
+
+        List<String> rows = new ArrayList<String>();
+        for (int i = 0; i < runs.size(); i++) {
+            Map<String, String> options = runs.get(i);
+            File stats = new File(outputDir, "run-" + (i + 1) + ".csv");
+            File log = new File(outputDir, "run-" + (i + 1) + ".log");
+            stats.delete();
+
+            StdOut.printf("Run %d/%d: %s\n", i + 1, runs.size(), options);
+            long start = System.currentTimeMillis();
+            int exitCode = run(options, stats, log);
+            StdOut.printf("  done in %,d s%s\n", (System.currentTimeMillis() - start) / 1000,
+                    exitCode == 0 ? "" : ", exit code " + exitCode + ", see " + log);
+
+            Object[] values = new Object[columns.size() + 1];
+            values[0] = i + 1;
+            for (int c = 0; c < columns.size(); c++) values[c + 1] = options.get(columns.get(c));
+            StringBuilder row = new StringBuilder(String.format(format.toString(), values));
+
+            // start, duration (ms), invocations, min, max, 95th, 99th, 99.9th, ..., errors, aborts, timeouts
+            String[] summary = readSummary(stats);
+            if (summary == null) {
+                row.append(String.format(" %12s %9s %9s %11s %9s %8s  %s", "-", "-", "-", "-", "-", "-",
+                        exitCode == 0 ? "no summary" : "exit " + exitCode));
+            } else {
+                double duration = Double.parseDouble(summary[1]);
+                row.append(String.format(" %,12.0f %9s %9s %11s %9s %,8d  %s",
+                        duration > 0 ? Double.parseDouble(summary[2]) * 1000 / duration : 0,
+                        summary[5], summary[6], summary[7], summary[4],
+                        Long.parseLong(summary[summary.length - 3].trim()) + Long.parseLong(summary[summary.length - 2].trim()),
+                        exitCode == 0 ? "ok" : "exit " + exitCode));
+            }
+            rows.add(row.toString());
+        }
+
+        PrintWriter table = new PrintWriter(new FileWriter(new File(outputDir, "summary.txt")));
+        try {
+            StdOut.print("\n" + Constants.HORIZONTAL_RULE);
+            StdOut.println(" Scenario Results");
+            StdOut.println(Constants.HORIZONTAL_RULE);
+            StdOut.println(header.toString());
+            table.println(header.toString());
+            for (String row : rows) {
+                StdOut.println(row);
+                table.println(row);
+            }
+        } finally {
+            table.close();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 1) {
+            System.err.println("Usage: ScenarioRunner scenariofile");
+            System.exit(-1);
+        }
+
+        ScenarioRunner runner;
+        try {
+            runner = new ScenarioRunner(new File(args[0]));
+            runner.checkRuns();
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(-1);
+            return;
+        }
+        runner.runAll();
+    }
+}
@@ -32,6 +32,7 @@ import org.voltdb.client.ProcCallException;
 import common.BookReviewsGenerator;
 import common.Constants;
 import common.ReviewerConfig;
+import util.KeyDistribution;
 import util.StdOut;
 
 import java.io.IOException;
@@ -75,7 +76,8 @@ public class SimpleBenchmark extends Benchmark {
             }
 
             int bookCount = (Integer)response.getResults()[0].fetchRow(0).get(0, VoltType.INTEGER);
-            BookReviewsGenerator gen = new BookReviewsGenerator(bookCount, false);
+            BookReviewsGenerator gen = new BookReviewsGenerator(new KeyDistribution.Uniform(bookCount), null, 0,
+                    BookReviewsGenerator.streamRandom(config.seed, 0));
 
             for (int i = 0; i < SimpleBenchmark.TXNS; i++) {
                 BookReviewsGenerator.Review review = gen.receive();
@@ -0,0 +1,55 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Sandeep Kunkunuru
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package reviewer;
+
+import common.BookReviewsGenerator;
+import common.ReviewerConfig;
+import common.WorkloadFile;
+import util.StdOut;
+
+import java.io.File;
+
+/**
+ * Writes <code>workloadsize</code> generated reviews to <code>workloadfile</code>,
+ * following the same workload options as the benchmarks. Benchmarks started with
+ * the same <code>workloadfile</code> then replay it instead of generating reviews.
+ */
+public class WorkloadCompiler {
+
+    public static void main(String[] args) throws Exception {
+        // create a configuration from the arguments
+        ReviewerConfig config = new ReviewerConfig();
+        config.parse(WorkloadCompiler.class.getName(), args);
+
+        if ("".equals(config.workloadfile.trim())) {
+            config.exitWithMessageAndUsage("workloadfile must be set");
+        }
+
+        StdOut.printf("Writing %,d reviews to %s...\n", config.workloadsize, config.workloadfile);
+        long start = System.currentTimeMillis();
+        WorkloadFile.write(new File(config.workloadfile), config.workloadsize, new BookReviewsGenerator(config));
+        StdOut.printf("Done in %,d ms.\n", System.currentTimeMillis() - start);
+    }
+}
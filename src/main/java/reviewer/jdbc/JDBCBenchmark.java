@@ -18,16 +18,24 @@ import org.voltdb.jdbc.IVoltDBConnection;
 import reviewer.Benchmark;
 import common.BookReviewsGenerator;
 import common.Constants;
+import common.ReviewSource;
 import common.ReviewerConfig;
 import util.StdOut;
 
 import java.io.IOException;
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
 
 public class JDBCBenchmark extends Benchmark {
     // Reference to the database connection we will use
     Connection connection;
 
+    // Every connection of the benchmark, the first one being connection.
+    // The driver shares one client between the connections to the same
+    // servers, so they all share the statistics of the first one.
+    final List<Connection> connections = new ArrayList<Connection>();
+
     /**
      * Constructor for benchmark instance. Configures VoltDB connection and prints
      * configuration.
@@ -50,65 +58,158 @@ public class JDBCBenchmark extends Benchmark {
      */
     void connect(String servers) throws InterruptedException,
             ClassNotFoundException, SQLException {
-        connection = DBConnection.getJDBCConnection(servers);
+        connection = addConnection(servers);
 
         periodicStatsContext = ((IVoltDBConnection) connection).createStatsContext();
         fullStatsContext = ((IVoltDBConnection) connection).createStatsContext();
     }
 
+    /**
+     * Opens one more connection. Its calls go through the client the driver
+     * keeps for these servers, the one of every other connection.
+     */
+    synchronized Connection addConnection(String servers) throws ClassNotFoundException, SQLException {
+        Connection newConnection = DBConnection.getJDBCConnection(servers);
+        connections.add(newConnection);
+        return newConnection;
+    }
+
+    void resetStatsBaselines() {
+        fullStatsContext.fetchAndResetBaseline();
+        periodicStatsContext.fetchAndResetBaseline();
+    }
 
     /**
      * While <code>benchmarkComplete</code> is set to false, run as many
      * synchronous procedure calls as possible and record the results.
+     * The call is prepared once per thread and reused for every review,
+     * possibly grouping <code>jdbcbatchsize</code> reviews per executeBatch.
+     * The driver still sends the calls of a batch one at a time.
      */
     class ReviewerThread implements Runnable {
+        private final Connection connection;
+        private final ReviewSource reviews = createReviewSource();
+        private PreparedStatement reviewCS;
+        private int batched = 0;
+
+        ReviewerThread(Connection connection) {
+            this.connection = connection;
+        }
 
         @Override
         public void run() {
-            while (warmupComplete.get() == false) {
-                // Get the next review
-                BookReviewsGenerator.Review call = reviewsGenerator.receive();
+            if (!prepare(reviewProcedure(false))) return;
+
+            // warmup calls are executed too, but not recorded
+            BookReviewsGenerator.Review call = null;
+            while (warmupComplete.get() == false && (call = reviews.receive()) != null) {
+                review(call, false);
+            }
+            flush(false);
 
-                // synchronously call the "Review" procedure
+            // the warmup may have validated reviews without posting them
+            if (!reviewProcedure(false).equals(reviewProcedure(true))) {
                 try {
-                    final PreparedStatement reviewCS = connection
-                            .prepareCall("{call Review(?,?,?,?)}");
-                    reviewCS.setString(1, call.email);
-                    reviewCS.setString(2, call.review);
-                    reviewCS.setInt(3, call.bookId);
-                    reviewCS.setLong(4, config.maxreviews);
-                } catch (Exception e) {
+                    reviewCS.close();
+                } catch (SQLException ignored) {
                 }
+                if (!prepare(reviewProcedure(true))) return;
             }
 
-            while (benchmarkComplete.get() == false) {
-                // Get the next review
-                BookReviewsGenerator.Review call = reviewsGenerator.receive();
+            // a limited stream may already be exhausted
+            while (call != null && benchmarkComplete.get() == false && (call = reviews.receive()) != null) {
+                review(call, true);
+            }
+            flush(true);
 
-                // synchronously call the "Review" procedure
-                try {
+            try {
+                reviewCS.close();
+            } catch (SQLException ignored) {
+            }
+        }
+
+        /**
+         * Prepares the call to the given review procedure.
+         *
+         * @return false if it could not be prepared.
+         */
+        boolean prepare(String procedure) {
+            try {
+                reviewCS = connection.prepareCall("{call " + procedure + "(?,?,?,?)}");
+                return true;
+            } catch (SQLException e) {
+                System.err.printf("Could not prepare the %s call: %s\n", procedure, e);
+                return false;
+            }
+        }
 
-                    final PreparedStatement reviewCS = connection
-                            .prepareCall("{call Review(?,?,?,?)}");
-                    reviewCS.setString(1, call.email);
-                    reviewCS.setString(2, call.review);
-                    reviewCS.setInt(3, call.bookId);
-                    reviewCS.setLong(4, config.maxreviews);
+        /**
+         * Synchronously calls the "Review" procedure, or adds the call to the
+         * current batch, executing it once full.
+         */
+        void review(BookReviewsGenerator.Review call, boolean record) {
+            long start = System.nanoTime();
+            try {
+                reviewCS.setString(1, call.email);
+                reviewCS.setString(2, call.review);
+                reviewCS.setInt(3, call.bookId);
+                reviewCS.setLong(4, config.maxreviews);
+
+                if (config.jdbcbatchsize == 1) {
+                    long resultCode = reviewCS.executeUpdate();
+                    if (record) stats.updateResults(resultCode, System.nanoTime() - start);
+                    return;
+                }
 
-                    try {
-                        long resultCode = reviewCS.executeUpdate();
+                reviewCS.addBatch();
+                if (++batched < config.jdbcbatchsize) return;
+            } catch (Exception e) {
+                if (record) stats.recordFailedReview(System.nanoTime() - start);
+                return;
+            }
+            flush(record);
+        }
 
-                        stats.updateResults(resultCode);
-                    } catch (Exception x) {
-                        stats.incrementFailedReviews();
+        /**
+         * Executes the pending batch, if any. Every review in the batch takes
+         * the latency of the whole batch.
+         */
+        void flush(boolean record) {
+            if (batched == 0) return;
+
+            int size = batched;
+            batched = 0;
+            long start = System.nanoTime();
+            try {
+                int[] resultCodes = reviewCS.executeBatch();
+                if (!record) return;
+                long latency = System.nanoTime() - start;
+                for (int resultCode : resultCodes) {
+                    stats.updateResults(resultCode, latency);
+                }
+            } catch (BatchUpdateException e) {
+                if (!record) return;
+                long latency = System.nanoTime() - start;
+                // the calls before the failed one did complete
+                int[] resultCodes = e.getUpdateCounts();
+                for (int resultCode : resultCodes) {
+                    if (resultCode == Statement.EXECUTE_FAILED) {
+                        stats.recordFailedReview(latency);
+                    } else {
+                        stats.updateResults(resultCode, latency);
                     }
-                } catch (Exception e) {
-                    stats.incrementFailedReviews();
+                }
+                for (int i = resultCodes.length; i < size; i++) {
+                    stats.recordFailedReview(latency);
+                }
+            } catch (Exception e) {
+                if (!record) return;
+                long latency = System.nanoTime() - start;
+                for (int i = 0; i < size; i++) {
+                    stats.recordFailedReview(latency);
                 }
             }
-
         }
-
     }
 
     /**
@@ -124,6 +225,7 @@ public class JDBCBenchmark extends Benchmark {
 
         // connect to one or more servers, loop until success
         connect(config.servers);
+        startMetricsEndpoint();
 
         // initialize using synchronous call
         // Initialize the application
@@ -141,20 +243,20 @@ public class JDBCBenchmark extends Benchmark {
         // create/start the requested number of threads
         Thread[] reviewrThreads = new Thread[config.threads];
         for (int i = 0; i < config.threads; ++i) {
-            reviewrThreads[i] = new Thread(new ReviewerThread());
+            Connection threadConnection = i > 0 && config.connectionperthread ? addConnection(config.servers) : connection;
+            reviewrThreads[i] = new Thread(new ReviewerThread(threadConnection));
             reviewrThreads[i].start();
         }
 
         // Run the benchmark loop for the requested warmup time
         StdOut.println("Warming up...");
-        Thread.sleep(1000l * config.warmup);
+        awaitWarmup();
 
         // signal to threads to end the warmup phase
         warmupComplete.set(true);
 
         // reset the stats after warmup
-        fullStatsContext.fetchAndResetBaseline();
-        periodicStatsContext.fetchAndResetBaseline();
+        resetStatsBaselines();
 
         // print periodic statistics to the console
         stats.setStartTS(System.currentTimeMillis());
@@ -182,14 +284,17 @@ public class JDBCBenchmark extends Benchmark {
         printResults();
 
         // close down the connection connections
-        connection.close();
+        for (Connection c : connections) {
+            c.close();
+        }
     }
 
     @Override
     protected void getSummaryCSV() throws IOException {
         // 4. Write stats to file if requested
-        if (!"".equals(config.statsfile.trim()))
-            ((IVoltDBConnection)connection).writeSummaryCSV(fullStatsContext.fetch().getStats(), config.statsfile);
+        if (!"".equals(config.statsfile.trim())) {
+            ((IVoltDBConnection) connection).writeSummaryCSV(fullStatsContext.fetch().getStats(), config.statsfile);
+        }
     }
 
     public void getWinner() throws IOException, ProcCallException {
@@ -200,11 +305,14 @@ public class JDBCBenchmark extends Benchmark {
             try {
                 ResultSet result = reviewCS.executeQuery();
 
+                // rows come sorted by number of reviews, JDBC columns are 1 based
+                String winner = null;
                 StdOut.println("Book Name\t\tReviews Received");
                 while (result.next()) {
-                    StdOut.printf("%s\t\t%,14d\n", result.getString(0), result.getLong(2));
+                    if (winner == null) winner = result.getString(1);
+                    StdOut.printf("%s\t\t%,14d\n", result.getString(1), result.getLong(3));
                 }
-                StdOut.printf("\nThe Winner is: %s\n\n", result.getString(0));
+                StdOut.printf("\nThe Winner is: %s\n\n", winner);
             } catch (Exception x) {
                 x.printStackTrace();
             }
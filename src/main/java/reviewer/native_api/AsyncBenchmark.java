@@ -22,15 +22,27 @@ package reviewer.native_api;
 
 import common.BookReviewsGenerator;
 import common.Constants;
-import common.DBConnection;
+import common.ReviewBatcher;
+import common.ReviewSource;
 import common.ReviewerConfig;
+import org.voltdb.VoltTable;
+import org.voltdb.client.Client;
 import org.voltdb.client.ClientResponse;
 import org.voltdb.client.NullCallback;
 import org.voltdb.client.ProcedureCallback;
 import reviewer.Benchmark;
 import util.StdOut;
 
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
 public class AsyncBenchmark extends NativeAPIBenchmark {
+    // Calls in flight allowed by --maxoutstanding, null when left to the client
+    final Semaphore window;
+
+    // Time submitters spent waiting on the window and on backpressure, after warmup
+    final AtomicLong windowBlockedNanos = new AtomicLong();
+    final AtomicLong backpressureBlockedNanos = new AtomicLong();
 
     /**
      * Constructor for benchmark instance.
@@ -40,24 +52,202 @@ public class AsyncBenchmark extends NativeAPIBenchmark {
      */
     public AsyncBenchmark(ReviewerConfig config) {
         super(config);
+
+        window = config.maxoutstanding > 0 ? new Semaphore(config.maxoutstanding) : null;
+    }
+
+    /**
+     * Waits for backpressure to clear and for room in the window, if any,
+     * before a call is handed to the client.
+     */
+    void awaitTurn(boolean record) throws InterruptedException {
+        long blocked = awaitBackpressureRelief();
+        if (record) backpressureBlockedNanos.addAndGet(blocked);
+
+        if (window != null) {
+            long start = System.nanoTime();
+            window.acquire();
+            if (record) windowBlockedNanos.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Asynchronously calls a procedure within the window, if any, giving the
+     * slot back right away when the client does not queue the call. A call
+     * retried after a lost connection keeps its slot.
+     */
+    void callWindowed(Client client, ProcedureCallback callback, String procedure, Object... parameters) throws Exception {
+        boolean queued = false;
+        try {
+            queued = callProcedure(client, windowed(callback), procedure, parameters);
+        } finally {
+            if (!queued && window != null) window.release();
+        }
+    }
+
+    /**
+     * @return the given callback, releasing its window slot first if there is a window.
+     */
+    ProcedureCallback windowed(final ProcedureCallback callback) {
+        if (window == null) return callback;
+
+        return new ProcedureCallback() {
+            @Override
+            public void clientCallback(ClientResponse response) throws Exception {
+                window.release();
+                callback.clientCallback(response);
+            }
+        };
     }
 
     /**
      * Callback to handle the response to a stored procedure call.
-     * Tracks response types.
+     * Tracks response types, and the latency within the load profile segment
+     * the call was paced in, if any.
      */
     class ReviewerCallback implements ProcedureCallback {
+        private final int segment;
+        private final long startNanos;
+
+        ReviewerCallback(int segment, long startNanos) {
+            this.segment = segment;
+            this.startNanos = startNanos;
+        }
+
         @Override
         public void clientCallback(ClientResponse response) throws Exception {
+            long latency = System.nanoTime() - startNanos;
+            if (segment >= 0) {
+                loadProfile.record(segment, latency, response.getStatus() == ClientResponse.SUCCESS);
+            }
             if (response.getStatus() == ClientResponse.SUCCESS) {
                 long resultCode = response.getResults()[0].asScalarLong();
-                stats.updateResults(resultCode);
+                stats.updateResults(resultCode, latency);
+            } else {
+                stats.recordFailedReview(latency);
+            }
+        }
+    }
+
+    /**
+     * Callback to handle the response to a ReviewBatch call.
+     * Tracks response types of every review in the batch, each review
+     * taking the latency of the whole batch, within the load profile segment
+     * it was paced in, if any.
+     */
+    class ReviewBatchCallback implements ProcedureCallback {
+        private final int[] segments;
+        private final long startNanos = System.nanoTime();
+
+        ReviewBatchCallback(int[] segments) {
+            this.segments = segments;
+        }
+
+        @Override
+        public void clientCallback(ClientResponse response) throws Exception {
+            long latency = System.nanoTime() - startNanos;
+            if (loadProfile != null) {
+                loadProfile.record(segments, latency, response.getStatus() == ClientResponse.SUCCESS);
+            }
+            if (response.getStatus() == ClientResponse.SUCCESS) {
+                VoltTable resultCodes = response.getResults()[0];
+                while (resultCodes.advanceRow()) {
+                    stats.updateResults(resultCodes.getLong(0), latency);
+                }
             } else {
-                stats.incrementFailedReviews();
+                for (int i = 0; i < segments.length; i++) {
+                    stats.recordFailedReview(latency);
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates a batcher which asynchronously posts every flushed batch through
+     * the given client, recording the outcome only once the warmup is over.
+     */
+    ReviewBatcher createBatcher(final Client client, final boolean record) {
+        return new ReviewBatcher(config.batchsize, config.batchflush, new ReviewBatcher.Sink() {
+            @Override
+            public void flush(int bookId, String[] emails, String[] reviews, int[] segments) throws Exception {
+                awaitTurn(record);
+                callWindowed(client, record ? new ReviewBatchCallback(segments) : new NullCallback(),
+                        reviewBatchProcedure(record),
+                        bookId, emails, reviews,
+                        config.maxreviews);
             }
+        });
+    }
+
+    /**
+     * Submits reviews as fast as the client lets it, first for the warmup, then
+     * until <code>benchmarkComplete</code> is set. Every submitter owns its review
+     * source and batcher, and possibly its client.
+     */
+    class Submitter implements Runnable {
+        final Client client;
+        private final ReviewSource reviews = createReviewSource();
+
+        Submitter(Client client) {
+            this.client = client;
+        }
+
+        @Override
+        public void run() {
+            try {
+                // The throughput may be throttled depending on client configuration
+                BookReviewsGenerator.Review call = null;
+                ReviewBatcher batcher = createBatcher(client, false);
+                while (warmupComplete.get() == false && (call = reviews.receive()) != null) {
+                    submit(batcher, call, false);
+                }
+                batcher.flushAll();
+
+                // a limited stream may already be exhausted
+                batcher = createBatcher(client, true);
+                while (call != null && benchmarkComplete.get() == false && (call = reviews.receive()) != null) {
+                    submit(batcher, call, true);
+                }
+                batcher.flushAll();
+            } catch (Exception e) {
+                System.err.printf("Submitter stopped: %s\n", e);
+            }
+        }
+
+        void submit(ReviewBatcher batcher, BookReviewsGenerator.Review call, boolean record) throws Exception {
+            // wait for the turn of this review when following a load profile
+            int segment = loadProfile == null ? -1 : loadProfile.acquire();
+
+            if (config.batchsize > 1) {
+                // group with other reviews of the same book
+                batcher.add(call, segment);
+                return;
+            }
+
+            awaitTurn(record);
+
+            if (config.quota && (record || !config.warmupdryrun)) {
+                // reserve on the email partition, then post on the book partition
+                callReviewWithQuota(client, call, record, window, segment);
+                return;
+            }
+
+            // asynchronously call the "Review" procedure, or its dry run during the warmup
+            callWindowed(client, record ? new ReviewerCallback(segment, System.nanoTime()) : new NullCallback(),
+                    reviewProcedure(record),
+                    call.email, call.review,
+                    call.bookId,
+                    config.maxreviews);
         }
     }
 
+    /**
+     * @return the submitter of the given index, submitting through the given client.
+     */
+    Submitter createSubmitter(Client client, int index) {
+        return new Submitter(client);
+    }
+
     /**
      * Core benchmark code.
      * Connect. Initialize. Run the loop. Cleanup. Print Results.
@@ -69,8 +259,15 @@ public class AsyncBenchmark extends NativeAPIBenchmark {
         StdOut.println(" Setup & Initialization");
         StdOut.println(Constants.HORIZONTAL_RULE);
 
+        // one client per submitter if requested, the first submitter using the main one
+        Submitter[] submitters = new Submitter[config.submitters];
+        for (int i = 0; i < config.submitters; ++i) {
+            submitters[i] = createSubmitter(i > 0 && config.clientpersubmitter ? addClient() : client, i);
+        }
+
         // connect to one or more servers, loop until success
-        DBConnection.connect(config.servers, client);
+        connectClients();
+        startMetricsEndpoint();
 
         // initialize using synchronous call
         StdOut.println("\nPopulating Static Tables\n");
@@ -80,63 +277,68 @@ public class AsyncBenchmark extends NativeAPIBenchmark {
         StdOut.println(" Starting Benchmark");
         StdOut.println(Constants.HORIZONTAL_RULE);
 
+        // create/start the requested number of submitters
+        Thread[] submitterThreads = new Thread[config.submitters];
+        for (int i = 0; i < config.submitters; ++i) {
+            submitterThreads[i] = new Thread(submitters[i], "submitter-" + i);
+            submitterThreads[i].start();
+        }
+
         // Run the benchmark loop for the requested warmup time
-        // The throughput may be throttled depending on client configuration
         StdOut.println("Warming up...");
-        final long warmupEndTime = System.currentTimeMillis() + (1000l * config.warmup);
-        while (warmupEndTime > System.currentTimeMillis()) {
-            // Get the next review
-            BookReviewsGenerator.Review call = reviewsGenerator.receive();
-
-            // asynchronously call the "Review" procedure
-            client.callProcedure(new NullCallback(),
-                    "Review",
-                    call.email, call.review,
-                    call.bookId,
-                    config.maxreviews);
+        awaitWarmup();
+
+        // signal to submitters to end the warmup phase
+        warmupComplete.set(true);
+        if (loadProfile != null) {
+            loadProfile.start();
         }
 
         // reset the stats after warmup
-        fullStatsContext.fetchAndResetBaseline();
-        periodicStatsContext.fetchAndResetBaseline();
+        resetStatsBaselines();
+        resetBackpressureNanos();
 
         // print periodic statistics to the console
         stats.setStartTS(System.currentTimeMillis());
         schedulePeriodicStats();
 
-
         // Run the benchmark loop for the requested duration
-        // The throughput may be throttled depending on client configuration
         StdOut.println("\nRunning benchmark...");
-        final long benchmarkEndTime = System.currentTimeMillis() + (1000l * config.duration);
-        while (benchmarkEndTime > System.currentTimeMillis()) {
-            // Get the next review
-            BookReviewsGenerator.Review call = reviewsGenerator.receive();
-
-            // asynchronously call the "Review" procedure
-            client.callProcedure(new ReviewerCallback(),
-                    "Review",
-                    call.email, call.review,
-                    call.bookId,
-                    config.maxreviews);
-        }
+        Thread.sleep(1000l * getDuration());
 
         // stop the threads
         benchmarkComplete.set(true);
+        for (Thread t : submitterThreads) {
+            t.join();
+        }
 
         // cancel periodic stats printing
         timer.cancel();
 
         // block until all outstanding txns return
-        client.drain();
+        drainClients();
 
         // print the summary results
         printResults();
+        printSubmissionStatistics();
 
         // close down the client connections
-        client.close();
+        closeClients();
     }
 
+    /**
+     * Prints how long submitters were held back by the window and by backpressure.
+     */
+    void printSubmissionStatistics() {
+        StdOut.print(Constants.HORIZONTAL_RULE);
+        StdOut.println(" Submission Statistics");
+        StdOut.println(Constants.HORIZONTAL_RULE);
+        StdOut.printf("Maximum outstanding calls:     %s\n",
+                window == null ? "client default" : String.format("%,9d", config.maxoutstanding));
+        StdOut.printf("Time under backpressure:       %,9.2f s\n", getBackpressureNanos() / 1e9);
+        StdOut.printf("Submitter time blocked on backpressure: %,9.2f s\n", backpressureBlockedNanos.get() / 1e9);
+        StdOut.printf("Submitter time blocked on window:       %,9.2f s\n\n", windowBlockedNanos.get() / 1e9);
+    }
 
     /**
      * Main routine creates a benchmark instance and kicks off the run method.
@@ -0,0 +1,168 @@
+/*
+ * This sample runs a mix of reviews and reads concurrently, the way reviews
+ * keep streaming in while dashboards poll the leaderboard.
+ *
+ * Every submitter picks the procedure of each asynchronous call following
+ * the --mix ratios: Review posts a review on its book partition, Results
+ * reads the leaderboard and ReviewsForBook the count of one book, both as
+ * multi partition reads. Calls are submitted exactly like the async
+ * benchmark, within the same window, backpressure, batching and load
+ * profile. The final report breaks throughput and latency down per
+ * procedure, so running the same rate with and without reads shows how much
+ * the reads slow the single partition writes down.
+ */
+
+package reviewer.native_api;
+
+import common.BookReviewsGenerator;
+import common.Constants;
+import common.ProcedureMix;
+import common.ReviewBatcher;
+import common.ReviewerConfig;
+import org.voltdb.client.Client;
+import org.voltdb.client.ClientStats;
+import org.voltdb.client.ClientStatsContext;
+import org.voltdb.client.NullCallback;
+import reviewer.Benchmark;
+import reviewer.MergedClientStats;
+import util.StdOut;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+public class MixedBenchmark extends AsyncBenchmark {
+    // Names of the books, in book id order
+    static final String[] BOOK_NAMES = Constants.BOOK_NAMES_CSV.split(",");
+
+    final ProcedureMix mix;
+
+    public MixedBenchmark(ReviewerConfig config) {
+        super(config);
+
+        mix = new ProcedureMix(config.mix);
+    }
+
+    /**
+     * Submits reviews like the async submitter, replacing some of them with
+     * reads following the mix.
+     */
+    class MixedSubmitter extends Submitter {
+        private final Random rand;
+
+        MixedSubmitter(Client client, int index) {
+            super(client);
+            // procedure picks use streams of their own, apart from the reviews
+            this.rand = BookReviewsGenerator.streamRandom(config.seed, -1 - index);
+        }
+
+        @Override
+        void submit(ReviewBatcher batcher, BookReviewsGenerator.Review call, boolean record) throws Exception {
+            String procedure = mix.next(rand != null ? rand : ThreadLocalRandom.current());
+            if (ProcedureMix.REVIEW.equals(procedure)) {
+                super.submit(batcher, call, record);
+                return;
+            }
+
+            // reads take their turn in the load profile too, but are not recorded in it
+            if (loadProfile != null) loadProfile.acquire();
+            awaitTurn(record);
+
+            if (ProcedureMix.RESULTS.equals(procedure)) {
+                callWindowed(client, new NullCallback(), "Results");
+            } else {
+                // read the book the review would have gone to, possibly an unknown one
+                String book = call.bookId <= BOOK_NAMES.length ? BOOK_NAMES[call.bookId - 1].trim() : "Unknown";
+                callWindowed(client, new NullCallback(), "ReviewsForBook", book);
+            }
+        }
+    }
+
+    @Override
+    Submitter createSubmitter(Client client, int index) {
+        return new MixedSubmitter(client, index);
+    }
+
+    /**
+     * @return the statistics since the end of the warmup of every procedure,
+     * across every client.
+     */
+    Map<String, MergedClientStats> fetchProcedureStats() {
+        Map<String, List<ClientStats>> byProcedure = new TreeMap<String, List<ClientStats>>();
+        for (ClientStatsContext context : fullStatsContexts) {
+            for (Map.Entry<String, ClientStats> entry : context.fetch().getStatsByProc().entrySet()) {
+                List<ClientStats> procedureStats = byProcedure.get(entry.getKey());
+                if (procedureStats == null) {
+                    procedureStats = new ArrayList<ClientStats>();
+                    byProcedure.put(entry.getKey(), procedureStats);
+                }
+                procedureStats.add(entry.getValue());
+            }
+        }
+
+        Map<String, MergedClientStats> merged = new TreeMap<String, MergedClientStats>();
+        for (Map.Entry<String, List<ClientStats>> entry : byProcedure.entrySet()) {
+            merged.put(entry.getKey(), new MergedClientStats(entry.getValue()));
+        }
+        return merged;
+    }
+
+    /**
+     * Prints throughput and latency of every procedure called since the warmup.
+     * The procedures reviews go through with batching or quotas have no share
+     * of their own in the mix.
+     */
+    void printProcedureStatistics(Map<String, MergedClientStats> byProcedure) {
+        StdOut.print(Constants.HORIZONTAL_RULE);
+        StdOut.println(" Per Procedure Statistics");
+        StdOut.println(Constants.HORIZONTAL_RULE);
+        StdOut.printf("%-16s %7s %14s %10s %9s %9s %9s %11s %8s\n", "Procedure", "Mix %", "Invocations",
+                "Txns/sec", "Avg (ms)", "95th (ms)", "99th (ms)", "99.9th (ms)", "Errors");
+        for (Map.Entry<String, MergedClientStats> entry : byProcedure.entrySet()) {
+            String procedure = entry.getKey();
+            MergedClientStats procedureStats = entry.getValue();
+            if (procedureStats.getInvocationsCompleted() == 0) continue;
+
+            String share = mix.getProcedures().contains(procedure) ?
+                    String.format("%.1f", 100 * mix.getShare(procedure)) : "-";
+            StdOut.printf("%-16s %7s %,14d %,10d %9.2f %9.2f %9.2f %11.2f %,8d\n", procedure,
+                    share,
+                    procedureStats.getInvocationsCompleted(),
+                    procedureStats.getTxnThroughput(),
+                    procedureStats.getAverageLatency(),
+                    procedureStats.kPercentileLatencyAsDouble(.95),
+                    procedureStats.kPercentileLatencyAsDouble(.99),
+                    procedureStats.kPercentileLatencyAsDouble(.999),
+                    procedureStats.getInvocationErrors() + procedureStats.getInvocationAborts());
+        }
+        StdOut.println();
+    }
+
+    @Override
+    public synchronized void printResults() throws Exception {
+        // before the final Results call of the report
+        Map<String, MergedClientStats> byProcedure = fetchProcedureStats();
+
+        super.printResults();
+        printProcedureStatistics(byProcedure);
+    }
+
+    /**
+     * Main routine creates a benchmark instance and kicks off the run method.
+     *
+     * @param args Command line arguments.
+     * @throws Exception if anything goes wrong.
+     * @see {@link ReviewerConfig}
+     */
+    public static void main(String[] args) throws Exception {
+        // create a configuration from the arguments
+        ReviewerConfig config = new ReviewerConfig();
+        config.parse(MixedBenchmark.class.getName(), args);
+
+        Benchmark benchmark = new MixedBenchmark(config);
+        benchmark.runBenchmark();
+    }
+}
@@ -24,16 +24,32 @@
 
 package reviewer.native_api;
 
+import common.BookReviewsGenerator;
+import common.ConnectionManager;
+import common.Constants;
+import common.DBConnection;
 import common.ReviewerConfig;
 import org.voltdb.VoltTable;
 import org.voltdb.client.Client;
 import org.voltdb.client.ClientConfig;
 import org.voltdb.client.ClientFactory;
+import org.voltdb.client.ClientResponse;
+import org.voltdb.client.ClientStats;
+import org.voltdb.client.ClientStatsContext;
 import org.voltdb.client.ProcCallException;
+import org.voltdb.client.ProcedureCallback;
 import reviewer.Benchmark;
+import reviewer.MergedClientStats;
 import util.StdOut;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Created by sandeep on 8/4/14.
@@ -42,18 +58,394 @@ public abstract class NativeAPIBenchmark extends Benchmark {
     // Reference to the database connection we will use
     public Client client;
 
+    // Configuration shared by every client of the benchmark
+    protected final ClientConfig clientConfig;
+
+    // Every client of the benchmark, the first one being client
+    protected final List<Client> clients = new ArrayList<Client>();
+    protected final List<ClientStatsContext> periodicStatsContexts = new ArrayList<ClientStatsContext>();
+    protected final List<ClientStatsContext> fullStatsContexts = new ArrayList<ClientStatsContext>();
+
+    // Reconnects lost hosts and retries the calls they failed, null with --reconnect=false
+    protected final ConnectionManager connectionManager;
+
+    // Quota reservations not given back, the review possibly being posted or the
+    // release not going through, so the reviewer may have fewer reviews than reserved
+    protected final AtomicLong unreleasedQuota = new AtomicLong();
+    // whether a ReleaseQuota call that could not be issued was reported
+    private final AtomicBoolean releaseFailureReported = new AtomicBoolean();
+
     public NativeAPIBenchmark(ReviewerConfig config) {
         super(config);
 
-        ClientConfig clientConfig = new ClientConfig(config.user, config.password, new StatusListener());
+        clientConfig = new ClientConfig(config.user, config.password, new StatusListener());
         clientConfig.setMaxTransactionsPerSecond(config.ratelimit);
+        clientConfig.setClientAffinity(config.clientaffinity);
+
+        this.client = addClient();
+        connectionManager = config.reconnect ?
+                new ConnectionManager(clients, config.maxreconnectbackoff, config.retryqueue, config.maxattempts) : null;
+
+        periodicStatsContext = periodicStatsContexts.get(0);
+        fullStatsContext = fullStatsContexts.get(0);
+    }
+
+    /**
+     * Creates one more client from the shared configuration, tracking its statistics.
+     */
+    protected Client addClient() {
+        Client newClient = ClientFactory.createClient(clientConfig);
+
+        clients.add(newClient);
+        periodicStatsContexts.add(newClient.createStatsContext());
+        fullStatsContexts.add(newClient.createStatsContext());
+
+        return newClient;
+    }
+
+    /**
+     * Connects every client to one or more servers, looping until success.
+     */
+    public void connectClients() throws InterruptedException {
+        for (Client c : clients) {
+            DBConnection.connect(config.servers, c);
+        }
+    }
+
+    /**
+     * Blocks until the outstanding transactions of every client have returned.
+     */
+    public void drainClients() throws Exception {
+        if (connectionManager != null) {
+            connectionManager.awaitRetries(5000);
+        }
+        for (Client c : clients) {
+            c.drain();
+        }
+    }
+
+    public void closeClients() throws InterruptedException {
+        if (connectionManager != null) {
+            connectionManager.shutdown();
+        }
+        for (Client c : clients) {
+            c.close();
+        }
+    }
+
+    public void resetStatsBaselines() {
+        for (ClientStatsContext context : fullStatsContexts) context.fetchAndResetBaseline();
+        for (ClientStatsContext context : periodicStatsContexts) context.fetchAndResetBaseline();
+    }
+
+    @Override
+    protected MergedClientStats fetchPeriodicStats() {
+        List<ClientStats> stats = new ArrayList<ClientStats>();
+        for (ClientStatsContext context : periodicStatsContexts) {
+            stats.add(context.fetchAndResetBaseline().getStats());
+        }
+        return new MergedClientStats(stats);
+    }
+
+    @Override
+    protected MergedClientStats fetchFullStats() {
+        List<ClientStats> stats = new ArrayList<ClientStats>();
+        for (ClientStatsContext context : fullStatsContexts) {
+            stats.add(context.fetch().getStats());
+        }
+        return new MergedClientStats(stats);
+    }
+
+    /**
+     * Asynchronously calls a procedure, retried when its connection is lost
+     * if the connection manager is on.
+     *
+     * @return whether the call was queued by the client.
+     */
+    public boolean callProcedure(Client client, ProcedureCallback callback, String procedure,
+                                 Object... parameters) throws IOException {
+        if (connectionManager == null) {
+            return client.callProcedure(callback, procedure, parameters);
+        }
+        return connectionManager.callProcedure(client, callback, procedure, parameters);
+    }
+
+    @Override
+    protected void onConnectionLost(String hostname, int port) {
+        if (connectionManager != null) {
+            connectionManager.connectionLost(hostname, port);
+        }
+    }
+
+    @Override
+    protected void printRecoveryStatistics() {
+        if (connectionManager != null) {
+            connectionManager.printResults(stats.getStartTS(), throughputHistory);
+        }
+        if (config.quota && unreleasedQuota.get() > 0) {
+            StdOut.printf("Quota reservations kept without a posted review: %,d\n\n", unreleasedQuota.get());
+        }
+    }
 
-        this.client = ClientFactory.createClient(clientConfig);
+    /**
+     * Breaks the statistics since the end of the warmup down per server
+     * host, across every client. With client affinity the share of each
+     * host follows the partitions it leads.
+     */
+    @Override
+    protected void printHostStatistics() {
+        Map<String, List<ClientStats>> byHost = new TreeMap<String, List<ClientStats>>();
+        for (ClientStatsContext context : fullStatsContexts) {
+            for (ClientStats connectionStats : context.fetch().getStatsByConnection().values()) {
+                String host = connectionStats.getHostname() + ":" + connectionStats.getPort();
+                List<ClientStats> hostStats = byHost.get(host);
+                if (hostStats == null) {
+                    hostStats = new ArrayList<ClientStats>();
+                    byHost.put(host, hostStats);
+                }
+                hostStats.add(connectionStats);
+            }
+        }
+        if (byHost.size() < 2) return;
+
+        StdOut.print("\n" + Constants.HORIZONTAL_RULE);
+        StdOut.println(" Per Host Statistics" + (config.clientaffinity ? " (client affinity)" : ""));
+        StdOut.println(Constants.HORIZONTAL_RULE);
+        StdOut.printf("%-30s %15s %12s %12s\n", "Host", "Invocations", "Txns/sec", "Avg (ms)");
+        for (Map.Entry<String, List<ClientStats>> entry : byHost.entrySet()) {
+            MergedClientStats hostStats = new MergedClientStats(entry.getValue());
+            StdOut.printf("%-30s %,15d %,12d %12.2f\n", entry.getKey(),
+                    hostStats.getInvocationsCompleted(),
+                    hostStats.getTxnThroughput(),
+                    hostStats.getAverageLatency());
+        }
+        StdOut.println();
+    }
+
+    /**
+     * Synchronously posts a review in two single partition transactions:
+     * reserve the reviewer's quota on the email partition, then post the review
+     * on the book partition, giving the reservation back if the review was
+     * definitely not posted. A reservation whose outcome is unknown is counted
+     * as kept.
+     *
+     * @return the same result codes as the Review procedure.
+     */
+    public long reviewWithQuota(Client client, BookReviewsGenerator.Review review) throws IOException, ProcCallException {
+        long resultCode;
+        try {
+            resultCode = client.callProcedure("ReserveQuota", review.email, config.maxreviews)
+                    .getResults()[0].asScalarLong();
+        } catch (ProcCallException e) {
+            if (!isRolledBack(e.getClientResponse())) unreleasedQuota.incrementAndGet();
+            throw e;
+        }
+        if (resultCode != Constants.REVIEW_SUCCESSFUL) {
+            return resultCode;
+        }
+
+        try {
+            resultCode = client.callProcedure("PostReview", review.email, review.review, review.bookId)
+                    .getResults()[0].asScalarLong();
+        } catch (ProcCallException e) {
+            if (isRolledBack(e.getClientResponse())) {
+                releaseQuota(client, review.email);
+            } else {
+                unreleasedQuota.incrementAndGet();
+            }
+            throw e;
+        } catch (IOException e) {
+            unreleasedQuota.incrementAndGet();
+            throw e;
+        }
+        if (resultCode == Constants.ERR_INVALID_BOOK) {
+            releaseQuota(client, review.email);
+        }
+        return resultCode;
+    }
+
+    /**
+     * @return true if the call certainly did not commit: it was rolled back
+     * or never ran. A lost connection or a timeout leaves the outcome unknown.
+     */
+    static boolean isRolledBack(ClientResponse response) {
+        if (response == null) return false;
+        switch (response.getStatus()) {
+            case ClientResponse.USER_ABORT:
+            case ClientResponse.GRACEFUL_FAILURE:
+            case ClientResponse.UNEXPECTED_FAILURE:
+            case ClientResponse.SERVER_UNAVAILABLE:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Asynchronously gives a reserved review back, counting it as unreleased if
+     * the release cannot be issued or fails.
+     */
+    void releaseQuota(Client client, String email) {
+        boolean queued = false;
+        try {
+            queued = callProcedure(client, new ProcedureCallback() {
+                @Override
+                public void clientCallback(ClientResponse response) throws Exception {
+                    if (response.getStatus() != ClientResponse.SUCCESS) unreleasedQuota.incrementAndGet();
+                }
+            }, "ReleaseQuota", email);
+        } catch (Exception e) {
+            // counted below, reported once so that a broken release path shows
+            if (releaseFailureReported.compareAndSet(false, true)) {
+                System.err.printf("ReleaseQuota could not be issued, the reservation is kept: %s\n", e);
+            }
+        }
+        if (!queued) unreleasedQuota.incrementAndGet();
+    }
+
+    /**
+     * Asynchronous counterpart of {@link #reviewWithQuota}: the PostReview call
+     * is pipelined from the ReserveQuota callback, so neither step waits on the
+     * submitting thread and no multi partition transaction is involved.
+     *
+     * @param record whether the outcome is recorded in the benchmark stats.
+     */
+    public void callReviewWithQuota(Client client, BookReviewsGenerator.Review review, boolean record) throws IOException {
+        callReviewWithQuota(client, review, record, null, -1);
+    }
+
+    /**
+     * Same as {@link #callReviewWithQuota(Client, BookReviewsGenerator.Review, boolean)},
+     * holding a slot of the given in flight window, if any, until the review is
+     * either rejected or posted, and recording its outcome within the given
+     * load profile segment, if any.
+     *
+     * @return whether the call was queued, the window slot being released otherwise.
+     */
+    public boolean callReviewWithQuota(Client client, BookReviewsGenerator.Review review, boolean record,
+                                       Semaphore window, int segment) throws IOException {
+        boolean queued = false;
+        try {
+            queued = callProcedure(client, new ReserveQuotaCallback(client, review, record, window, segment,
+                            System.nanoTime()),
+                    "ReserveQuota", review.email, config.maxreviews);
+        } finally {
+            if (!queued && window != null) window.release();
+        }
+        return queued;
+    }
+
+    class ReserveQuotaCallback implements ProcedureCallback {
+        private final Client client;
+        private final BookReviewsGenerator.Review review;
+        private final boolean record;
+        private final Semaphore window;
+        private final int segment;
+        private final long startNanos;
+
+        ReserveQuotaCallback(Client client, BookReviewsGenerator.Review review, boolean record, Semaphore window,
+                             int segment, long startNanos) {
+            this.client = client;
+            this.review = review;
+            this.record = record;
+            this.window = window;
+            this.segment = segment;
+            this.startNanos = startNanos;
+        }
+
+        @Override
+        public void clientCallback(ClientResponse response) throws Exception {
+            if (response.getStatus() != ClientResponse.SUCCESS) {
+                // the reservation may have been made before a lost connection or a timeout
+                if (!isRolledBack(response)) unreleasedQuota.incrementAndGet();
+                if (window != null) window.release();
+                if (record) recordFailedReview(segment, System.nanoTime() - startNanos);
+                return;
+            }
+
+            long resultCode = response.getResults()[0].asScalarLong();
+            if (resultCode != Constants.REVIEW_SUCCESSFUL) {
+                if (window != null) window.release();
+                if (record) recordReview(segment, resultCode, System.nanoTime() - startNanos);
+                return;
+            }
+
+            boolean queued = false;
+            try {
+                queued = callProcedure(client, new PostReviewCallback(client, review, record, window, segment,
+                                startNanos),
+                        "PostReview", review.email, review.review, review.bookId);
+            } catch (Exception e) {
+            }
+
+            // PostReview was never sent, the reservation goes back right away
+            if (!queued) {
+                if (window != null) window.release();
+                releaseQuota(client, review.email);
+                if (record) recordFailedReview(segment, System.nanoTime() - startNanos);
+            }
+        }
+    }
+
+    class PostReviewCallback implements ProcedureCallback {
+        private final Client client;
+        private final BookReviewsGenerator.Review review;
+        private final boolean record;
+        private final Semaphore window;
+        private final int segment;
+        private final long startNanos;
 
-        periodicStatsContext = client.createStatsContext();
-        fullStatsContext = client.createStatsContext();
+        PostReviewCallback(Client client, BookReviewsGenerator.Review review, boolean record, Semaphore window,
+                           int segment, long startNanos) {
+            this.client = client;
+            this.review = review;
+            this.record = record;
+            this.window = window;
+            this.segment = segment;
+            this.startNanos = startNanos;
+        }
+
+        @Override
+        public void clientCallback(ClientResponse response) throws Exception {
+            // both steps count in the latency of the review
+            long latency = System.nanoTime() - startNanos;
+            if (window != null) window.release();
+
+            long resultCode = response.getStatus() == ClientResponse.SUCCESS ?
+                    response.getResults()[0].asScalarLong() : -1;
+
+            // give the reserved quota back only when the review was certainly not
+            // posted, an unknown outcome keeps it so the limit is never exceeded
+            if (resultCode == Constants.ERR_INVALID_BOOK || isRolledBack(response)) {
+                releaseQuota(client, review.email);
+            } else if (resultCode == -1) {
+                unreleasedQuota.incrementAndGet();
+            }
+
+            if (!record) return;
+            if (resultCode == -1) {
+                recordFailedReview(segment, latency);
+            } else {
+                recordReview(segment, resultCode, latency);
+            }
+        }
     }
 
+    /**
+     * Records the result of a review, within the given load profile segment if any.
+     */
+    void recordReview(int segment, long resultCode, long latencyNanos) {
+        stats.updateResults(resultCode, latencyNanos);
+        if (loadProfile != null) loadProfile.record(segment, latencyNanos, true);
+    }
+
+    /**
+     * Records a review that failed, within the given load profile segment if any.
+     */
+    void recordFailedReview(int segment, long latencyNanos) {
+        stats.recordFailedReview(latencyNanos);
+        if (loadProfile != null) loadProfile.record(segment, latencyNanos, false);
+    }
 
     public void getWinner() throws IOException, ProcCallException {
         // 2. results
@@ -69,8 +461,13 @@ public abstract class NativeAPIBenchmark extends Benchmark {
     @Override
     protected void getSummaryCSV() throws IOException {
         // 4. Write stats to file if requested
-        if (!"".equals(config.statsfile.trim()))
+        if ("".equals(config.statsfile.trim())) return;
+
+        if (clients.size() == 1) {
             (client).writeSummaryCSV(fullStatsContext.fetch().getStats(), config.statsfile);
+        } else {
+            fetchFullStats().writeSummaryCSV(config.statsfile);
+        }
     }
 
 }
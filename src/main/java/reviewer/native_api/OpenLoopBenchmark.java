@@ -0,0 +1,199 @@
+/*
+ * This sample drives the Review procedure open loop: calls are scheduled
+ * at a fixed target rate, whatever the response times, the way independent
+ * users would send them.
+ *
+ * Latency is recorded from the intended start of every call rather than
+ * from the moment it was actually handed to the client. When the client or
+ * the cluster falls behind, the calls waiting for their turn are counted as
+ * waiting, instead of silently being sent later (coordinated omission).
+ * Both measures are printed side by side in the final report.
+ */
+
+package reviewer.native_api;
+
+import common.BookReviewsGenerator;
+import common.Constants;
+import common.ReviewerConfig;
+import org.voltdb.client.ClientResponse;
+import org.voltdb.client.ProcedureCallback;
+import reviewer.Benchmark;
+import util.LatencyHistogram;
+import util.SteadyStateDetector;
+import util.StdOut;
+
+import java.util.concurrent.locks.LockSupport;
+
+public class OpenLoopBenchmark extends NativeAPIBenchmark {
+
+    public OpenLoopBenchmark(ReviewerConfig config) {
+        super(config);
+
+        intendedLatency = new LatencyHistogram();
+    }
+
+    /**
+     * Callback to handle the response to a stored procedure call.
+     * Tracks response types and the latency from the intended start.
+     */
+    class OpenLoopCallback implements ProcedureCallback {
+        private final long intendedStartNanos;
+        private final boolean record;
+
+        OpenLoopCallback(long intendedStartNanos, boolean record) {
+            this.intendedStartNanos = intendedStartNanos;
+            this.record = record;
+        }
+
+        @Override
+        public void clientCallback(ClientResponse response) throws Exception {
+            if (!record) return;
+
+            // outcome latencies are measured from the intended start as well
+            long latency = System.nanoTime() - intendedStartNanos;
+            intendedLatency.recordNanos(latency);
+            if (response.getStatus() == ClientResponse.SUCCESS) {
+                stats.updateResults(response.getResults()[0].asScalarLong(), latency);
+            } else {
+                stats.recordFailedReview(latency);
+            }
+            onResponse(intendedStartNanos, latency, response.getStatus() == ClientResponse.SUCCESS);
+        }
+    }
+
+    /**
+     * Called for every recorded response, with the intended start of its call
+     * and its latency from that start.
+     */
+    void onResponse(long intendedStartNanos, long latencyNanos, boolean success) {
+    }
+
+    /**
+     * Issues calls at <code>rate</code> calls per second, at their intended start
+     * times, until <code>endNanos</code>. A call that is late is issued right away
+     * but keeps its intended start, the schedule never slips.
+     *
+     * @return false once the review stream is exhausted.
+     */
+    boolean runSchedule(long startNanos, long endNanos, double rate, boolean record) throws Exception {
+        final double intervalNanos = 1000000000.0 / rate;
+
+        for (long i = 0; ; i++) {
+            long intendedStart = startNanos + (long) (i * intervalNanos);
+            if (intendedStart >= endNanos) return true;
+
+            // park while far ahead of the schedule, spin for the last stretch
+            long now;
+            while ((now = System.nanoTime()) < intendedStart) {
+                if (intendedStart - now > 100000) {
+                    LockSupport.parkNanos(intendedStart - now - 50000);
+                }
+            }
+
+            // none left once a limited stream is exhausted
+            BookReviewsGenerator.Review call = reviewsGenerator.receive();
+            if (call == null) return false;
+            callProcedure(client, new OpenLoopCallback(intendedStart, record),
+                    reviewProcedure(record),
+                    call.email, call.review,
+                    call.bookId,
+                    config.maxreviews);
+        }
+    }
+
+    /**
+     * Runs the schedule at the given rate, unrecorded, for <code>warmup</code>
+     * seconds or, with <code>adaptivewarmup</code>, until one second intervals
+     * are steady. See {@link #isAdaptiveWarmup()}.
+     */
+    void runWarmup(double rate) throws Exception {
+        long startMillis = System.currentTimeMillis();
+        long start = System.nanoTime();
+        if (!isAdaptiveWarmup()) {
+            runSchedule(start, start + 1000000000l * config.warmup, rate, false);
+            endWarmup(startMillis, false);
+            return;
+        }
+
+        SteadyStateDetector detector = newSteadyStateDetector();
+        fetchPeriodicStats();
+        boolean steady = false;
+        for (int second = 0; second < config.warmup && !steady; second++) {
+            long sliceStart = start + second * 1000000000l;
+            if (!runSchedule(sliceStart, sliceStart + 1000000000l, rate, false)) break;
+            steady = addInterval(detector);
+        }
+        endWarmup(startMillis, steady);
+    }
+
+    /**
+     * Core benchmark code.
+     * Connect. Initialize. Run the schedule. Cleanup. Print Results.
+     *
+     * @throws Exception if anything unexpected happens.
+     */
+    public void runBenchmark() throws Exception {
+        StdOut.print(Constants.HORIZONTAL_RULE);
+        StdOut.println(" Setup & Initialization");
+        StdOut.println(Constants.HORIZONTAL_RULE);
+
+        // connect to one or more servers, loop until success
+        connectClients();
+        startMetricsEndpoint();
+
+        // initialize using synchronous call
+        StdOut.println("\nPopulating Static Tables\n");
+        client.callProcedure("Initialize", config.books, Constants.BOOK_NAMES_CSV);
+
+        StdOut.print(Constants.HORIZONTAL_RULE);
+        StdOut.println(" Starting Benchmark");
+        StdOut.println(Constants.HORIZONTAL_RULE);
+
+        // Run the schedule for the requested warmup time
+        StdOut.printf("Warming up at %,d calls/sec...\n", config.rate);
+        runWarmup(config.rate);
+
+        // reset the stats after warmup
+        resetStatsBaselines();
+
+        // print periodic statistics to the console
+        stats.setStartTS(System.currentTimeMillis());
+        schedulePeriodicStats();
+
+        // Run the schedule for the requested duration
+        StdOut.printf("\nRunning benchmark at %,d calls/sec...\n", config.rate);
+        long start = System.nanoTime();
+        runSchedule(start, start + 1000000000l * config.duration, config.rate, true);
+
+        // stop the threads
+        benchmarkComplete.set(true);
+
+        // cancel periodic stats printing
+        timer.cancel();
+
+        // block until all outstanding txns return
+        drainClients();
+
+        // print the summary results
+        printResults();
+
+        // close down the client connections
+        closeClients();
+    }
+
+    /**
+     * Main routine creates a benchmark instance and kicks off the run method.
+     *
+     * @param args Command line arguments.
+     * @throws Exception if anything goes wrong.
+     * @see {@link ReviewerConfig}
+     */
+    public static void main(String[] args) throws Exception {
+        // create a configuration from the arguments
+        ReviewerConfig config = new ReviewerConfig();
+        config.parse(OpenLoopBenchmark.class.getName(), args);
+
+        Benchmark benchmark = new OpenLoopBenchmark(config);
+        benchmark.runBenchmark();
+    }
+}
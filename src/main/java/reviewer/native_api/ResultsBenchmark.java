@@ -0,0 +1,148 @@
+/*
+ * This sample measures how the latency of the Results procedure evolves
+ * as the reviews table grows.
+ *
+ * Reviews are bulk loaded through the default REVIEWS.insert procedure
+ * (no validation) until the table reaches each of the requested sizes.
+ * At every size the Results procedure, which reads the v_reviews_by_book
+ * rollup, is timed and compared against the equivalent ad hoc query that
+ * scans and groups the whole reviews table.
+ *
+ * Loading 100M reviews needs a server with enough memory to hold them,
+ * lower the sizes with --resultsizes on smaller machines.
+ */
+
+package reviewer.native_api;
+
+import common.BookReviewsGenerator;
+import common.Constants;
+import common.DBConnection;
+import common.ReviewerConfig;
+import org.voltdb.client.NullCallback;
+import reviewer.Benchmark;
+import util.KeyDistribution;
+import util.StdOut;
+
+import java.util.Arrays;
+
+public class ResultsBenchmark extends NativeAPIBenchmark {
+    // Same statement the Results procedure used before the rollup existed
+    static final String SCAN_QUERY = "SELECT book_name, books.book_id, COUNT(*) as num_reviews"
+            + " FROM reviews, books where reviews.book_id = books.book_id"
+            + " GROUP BY book_name, books.book_id order by num_reviews desc;";
+
+    public ResultsBenchmark(ReviewerConfig config) {
+        super(config);
+    }
+
+    /**
+     * Calls the given procedure <code>resultcalls</code> times and returns
+     * the sorted latencies, in milliseconds.
+     */
+    double[] time(String procedure, Object... parameters) throws Exception {
+        double[] latencies = new double[config.resultcalls];
+        for (int i = 0; i < latencies.length; i++) {
+            long start = System.nanoTime();
+            client.callProcedure(procedure, parameters);
+            latencies[i] = (System.nanoTime() - start) / 1000000.0;
+        }
+        Arrays.sort(latencies);
+        return latencies;
+    }
+
+    /**
+     * @return the number of rows in the reviews table.
+     */
+    long countReviews() throws Exception {
+        return client.callProcedure("@AdHoc", "SELECT COUNT(*) FROM reviews;").getResults()[0].asScalarLong();
+    }
+
+    static double average(double[] values) {
+        double sum = 0;
+        for (double value : values) sum += value;
+        return sum / values.length;
+    }
+
+    static double percentile(double[] sorted, double percentile) {
+        return sorted[(int) Math.min(sorted.length - 1, Math.floor(percentile * sorted.length))];
+    }
+
+    /**
+     * Core benchmark code.
+     * Connect. Initialize. Load and measure at every size. Cleanup.
+     *
+     * @throws Exception if anything unexpected happens.
+     */
+    public void runBenchmark() throws Exception {
+        StdOut.print(Constants.HORIZONTAL_RULE);
+        StdOut.println(" Setup & Initialization");
+        StdOut.println(Constants.HORIZONTAL_RULE);
+
+        // connect to one or more servers, loop until success
+        DBConnection.connect(config.servers, client);
+
+        // initialize using synchronous call
+        StdOut.println("\nPopulating Static Tables\n");
+        client.callProcedure("Initialize", config.books, Constants.BOOK_NAMES_CSV);
+
+        // REVIEWS.insert does not validate, so only generate valid books
+        BookReviewsGenerator generator = new BookReviewsGenerator(new KeyDistribution.Uniform(config.books), null, 0,
+                BookReviewsGenerator.streamRandom(config.seed, 0));
+
+        StdOut.print(Constants.HORIZONTAL_RULE);
+        StdOut.println(" Starting Benchmark");
+        StdOut.println(Constants.HORIZONTAL_RULE);
+
+        StdOut.printf("%15s %12s %12s %12s %12s\n", "Reviews", "Avg (ms)", "50th (ms)", "99th (ms)", "Scan avg (ms)");
+
+        long loaded = countReviews();
+        for (String size : config.resultsizes.split(",")) {
+            long target = Long.parseLong(size.trim());
+
+            // asynchronously load reviews up to the requested table size, counting
+            // the rows once the inserts are done so that failed ones are made up for
+            while (loaded < target) {
+                for (long i = loaded; i < target; i++) {
+                    BookReviewsGenerator.Review review = generator.receive();
+                    client.callProcedure(new NullCallback(), "REVIEWS.insert", review.email, review.review, review.bookId);
+                }
+                client.drain();
+
+                long count = countReviews();
+                if (count == loaded) {
+                    throw new IllegalStateException("No review could be inserted past " + loaded + " rows");
+                }
+                loaded = count;
+            }
+
+            double[] results = time("Results");
+            double[] scan = time("@AdHoc", SCAN_QUERY);
+
+            StdOut.printf("%,15d %12.2f %12.2f %12.2f %12.2f\n", loaded,
+                    average(results), percentile(results, .5), percentile(results, .99), average(scan));
+        }
+
+        StdOut.println();
+        getWinner();
+
+        // block until all outstanding txns return, then close down the client connections
+        client.drain();
+        client.close();
+    }
+
+    /**
+     * Main routine creates a benchmark instance and kicks off the run method.
+     *
+     * @param args Command line arguments.
+     * @throws Exception if anything goes wrong.
+     * @see {@link ReviewerConfig}
+     */
+    public static void main(String[] args) throws Exception {
+        // create a configuration from the arguments
+        ReviewerConfig config = new ReviewerConfig();
+        config.parse(ResultsBenchmark.class.getName(), args);
+
+        Benchmark benchmark = new ResultsBenchmark(config);
+        benchmark.runBenchmark();
+    }
+}
@@ -0,0 +1,318 @@
+/*
+ * This sample searches for the highest rate the cluster sustains while
+ * a latency percentile stays under a target, e.g. 99% of the reviews
+ * answered within 5 ms.
+ *
+ * Every step offers a fixed rate open loop, latency being measured from
+ * the intended start of every call, and lasts until one second interval
+ * metrics have reached steady state (or --stepduration). The rate is
+ * doubled from --rate until a step misses the target, then bisected
+ * between the highest passing and the lowest failing rates. A step passes
+ * when, over its steady window, the percentile is under the target, at
+ * least 95% of the offered rate completes and at most 1% of the calls fail.
+ *
+ * A single thread issues the calls, so very high rates may be limited by
+ * the client rather than by the cluster.
+ */
+
+package reviewer.native_api;
+
+import common.Constants;
+import common.ReviewerConfig;
+import reviewer.Benchmark;
+import util.LatencyHistogram;
+import util.SteadyStateDetector;
+import util.StdOut;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+public class SaturationBenchmark extends OpenLoopBenchmark {
+    static final long INTERVAL_NANOS = 1000000000l;
+    // share of the offered rate a sustainable step completes
+    static final double KEPT_UP = 0.95;
+    // share of the calls a sustainable step may fail
+    static final double MAX_FAILURES = 0.01;
+
+    // intervals of the step running, null between steps
+    private volatile StepIntervals current;
+
+    /**
+     * Responses of the one second intervals of a step, each response going to
+     * the interval its call was scheduled in, whenever it arrives.
+     */
+    static class StepIntervals {
+        final long startNanos;
+        final AtomicReferenceArray<LatencyHistogram> latencies;
+        final AtomicLongArray failures;
+
+        StepIntervals(long startNanos, int seconds) {
+            this.startNanos = startNanos;
+            this.latencies = new AtomicReferenceArray<LatencyHistogram>(seconds);
+            this.failures = new AtomicLongArray(seconds);
+        }
+
+        /**
+         * Prepares the given interval, before any of its calls is issued.
+         */
+        void open(int second) {
+            latencies.set(second, new LatencyHistogram());
+        }
+
+        void record(long intendedStartNanos, long latencyNanos, boolean success) {
+            long second = (intendedStartNanos - startNanos) / INTERVAL_NANOS;
+            if (intendedStartNanos < startNanos || second >= latencies.length()) return;
+
+            LatencyHistogram latency = latencies.get((int) second);
+            if (latency == null) return;
+            latency.recordNanos(latencyNanos);
+            if (!success) failures.incrementAndGet((int) second);
+        }
+    }
+
+    /**
+     * Outcome of one rate, measured over its last steady window.
+     */
+    static class Step {
+        final double rate;
+        final LatencyHistogram latency = new LatencyHistogram();
+        double throughput;
+        long failures;
+        boolean steady;
+        int seconds;
+        boolean passed;
+
+        Step(double rate) {
+            this.rate = rate;
+        }
+    }
+
+    public SaturationBenchmark(ReviewerConfig config) {
+        super(config);
+    }
+
+    @Override
+    void onResponse(long intendedStartNanos, long latencyNanos, boolean success) {
+        StepIntervals intervals = current;
+        if (intervals != null) intervals.record(intendedStartNanos, latencyNanos, success);
+    }
+
+    /**
+     * Offers the given rate until the interval metrics are steady, or for
+     * <code>stepduration</code> seconds at most. An interval is judged once the
+     * next one has been scheduled, giving its calls time to complete, and the
+     * step ends by draining every call, so that no response is left over for
+     * the next step.
+     */
+    Step runStep(double rate) throws Exception {
+        Step step = new Step(rate);
+        SteadyStateDetector detector = new SteadyStateDetector(config.steadywindow,
+                config.steadytolerance, config.steadylatencytolerance);
+        Deque<Integer> window = new ArrayDeque<Integer>();
+
+        StepIntervals intervals = new StepIntervals(System.nanoTime(), config.stepduration);
+        current = intervals;
+        boolean steady = false;
+        int seconds = 0;
+        while (seconds < config.stepduration && !steady) {
+            intervals.open(seconds);
+            long sliceStart = intervals.startNanos + seconds * INTERVAL_NANOS;
+            if (!runSchedule(sliceStart, sliceStart + INTERVAL_NANOS, rate, true)) {
+                throw new IllegalStateException("the review stream ran out during the search");
+            }
+            seconds++;
+
+            if (seconds > 1) {
+                steady = judge(intervals, seconds - 2, detector, window);
+            }
+        }
+
+        // the calls of the step complete before the next one starts
+        drainClients();
+        current = null;
+        if (!steady) {
+            judge(intervals, seconds - 1, detector, window);
+        }
+
+        // late responses of the window are in by now
+        for (int second : window) {
+            step.latency.add(intervals.latencies.get(second));
+            step.failures += intervals.failures.get(second);
+        }
+        step.throughput = detector.getThroughput();
+        step.steady = detector.isSteady();
+        step.seconds = detector.getCount();
+        step.passed = step.latency.kPercentileLatencyAsDouble(config.slapercentile / 100) <= config.slalatency
+                && step.throughput >= KEPT_UP * rate
+                && step.failures <= MAX_FAILURES * step.latency.getTotalCount();
+
+        StdOut.printf("%,12.0f calls/sec: %,12.0f txns/sec, %5.1fth %8.2f ms, %s after %2d s, %s\n",
+                rate, step.throughput, config.slapercentile,
+                step.latency.kPercentileLatencyAsDouble(config.slapercentile / 100),
+                step.steady ? "steady" : "unsteady", step.seconds, step.passed ? "sustained" : "not sustained");
+        return step;
+    }
+
+    /**
+     * Adds the given interval of the step to the detector and to the judged window.
+     *
+     * @return true once the last intervals are steady.
+     */
+    boolean judge(StepIntervals intervals, int second, SteadyStateDetector detector, Deque<Integer> window) {
+        LatencyHistogram done = intervals.latencies.get(second);
+        window.addLast(second);
+        if (window.size() > config.steadywindow) {
+            window.removeFirst();
+        }
+        return detector.add(done.getTotalCount() * 1e9 / INTERVAL_NANOS, done.getAverageLatency());
+    }
+
+    /**
+     * Doubles the rate from <code>rate</code> (or halves it when that one fails)
+     * until it crosses the target, then bisects.
+     *
+     * @return every step, the best being the highest passing one.
+     */
+    List<Step> search() throws Exception {
+        List<Step> steps = new ArrayList<Step>();
+        double passing = 0;
+        double failing = 0;
+
+        double rate = Math.min(config.rate, config.maxrate);
+        while (true) {
+            Step step = runStep(rate);
+            steps.add(step);
+            if (step.passed) {
+                passing = rate;
+                if (failing > 0 || rate >= config.maxrate) break;
+                rate = Math.min(2 * rate, config.maxrate);
+            } else {
+                failing = rate;
+                if (passing > 0 || rate < 2) break;
+                rate = rate / 2;
+            }
+        }
+
+        while (passing > 0 && failing > 0 && (failing - passing) / passing > config.searchprecision) {
+            rate = (passing + failing) / 2;
+            Step step = runStep(rate);
+            steps.add(step);
+            if (step.passed) {
+                passing = rate;
+            } else {
+                failing = rate;
+            }
+        }
+        return steps;
+    }
+
+    /**
+     * Prints the latency curve of every rate tried and the highest sustainable one.
+     */
+    void printSearchResults(List<Step> steps) {
+        Collections.sort(steps, new Comparator<Step>() {
+            @Override
+            public int compare(Step a, Step b) {
+                return Double.compare(a.rate, b.rate);
+            }
+        });
+
+        StdOut.print("\n" + Constants.HORIZONTAL_RULE);
+        StdOut.printf(" Saturation Search (%.1fth percentile under %.2f ms)\n", config.slapercentile, config.slalatency);
+        StdOut.println(Constants.HORIZONTAL_RULE);
+        printWarmup();
+        StdOut.println();
+        StdOut.printf("%12s %12s %9s %9s %9s %9s %11s %9s %10s  %s\n", "Offered/sec", "Txns/sec", "Avg (ms)",
+                "50th (ms)", "95th (ms)", "99th (ms)", "99.9th (ms)", "Failures", "Steady", "Verdict");
+
+        Step best = null;
+        for (Step step : steps) {
+            StdOut.printf("%,12.0f %,12.0f %9.2f %9.2f %9.2f %9.2f %11.2f %,9d %10s  %s\n",
+                    step.rate, step.throughput,
+                    step.latency.getAverageLatency(),
+                    step.latency.kPercentileLatencyAsDouble(.5),
+                    step.latency.kPercentileLatencyAsDouble(.95),
+                    step.latency.kPercentileLatencyAsDouble(.99),
+                    step.latency.kPercentileLatencyAsDouble(.999),
+                    step.failures,
+                    step.steady ? step.seconds + " s" : "no",
+                    step.passed ? "sustained" : "not sustained");
+            if (step.passed && (best == null || step.throughput > best.throughput)) best = step;
+        }
+
+        StdOut.println();
+        if (best == null) {
+            StdOut.println("No rate tried meets the target, lower --rate or raise --slalatency.\n");
+        } else {
+            StdOut.printf("Highest sustainable throughput: %,.0f txns/sec (offered %,.0f calls/sec), "
+                            + "%.1fth percentile %.2f ms\n\n", best.throughput, best.rate,
+                    config.slapercentile, best.latency.kPercentileLatencyAsDouble(config.slapercentile / 100));
+        }
+    }
+
+    /**
+     * Core benchmark code.
+     * Connect. Initialize. Warm up. Search. Cleanup. Print Results.
+     *
+     * @throws Exception if anything unexpected happens.
+     */
+    public void runBenchmark() throws Exception {
+        StdOut.print(Constants.HORIZONTAL_RULE);
+        StdOut.println(" Setup & Initialization");
+        StdOut.println(Constants.HORIZONTAL_RULE);
+
+        // connect to one or more servers, loop until success
+        connectClients();
+        startMetricsEndpoint();
+
+        // initialize using synchronous call
+        StdOut.println("\nPopulating Static Tables\n");
+        client.callProcedure("Initialize", config.books, Constants.BOOK_NAMES_CSV);
+
+        StdOut.print(Constants.HORIZONTAL_RULE);
+        StdOut.println(" Starting Benchmark");
+        StdOut.println(Constants.HORIZONTAL_RULE);
+
+        // Run the schedule at the first rate for the requested warmup time
+        StdOut.printf("Warming up at %,d calls/sec...\n", config.rate);
+        runWarmup(config.rate);
+        drainClients();
+        resetStatsBaselines();
+
+        StdOut.println("\nSearching...");
+        List<Step> steps = search();
+
+        // stop the threads
+        benchmarkComplete.set(true);
+
+        // block until all outstanding txns return
+        drainClients();
+
+        printSearchResults(steps);
+
+        // close down the client connections
+        closeClients();
+    }
+
+    /**
+     * Main routine creates a benchmark instance and kicks off the run method.
+     *
+     * @param args Command line arguments.
+     * @throws Exception if anything goes wrong.
+     * @see {@link ReviewerConfig}
+     */
+    public static void main(String[] args) throws Exception {
+        // create a configuration from the arguments
+        ReviewerConfig config = new ReviewerConfig();
+        config.parse(SaturationBenchmark.class.getName(), args);
+
+        Benchmark benchmark = new SaturationBenchmark(config);
+        benchmark.runBenchmark();
+    }
+}
@@ -14,56 +14,183 @@ package reviewer.native_api;
 
 import common.BookReviewsGenerator;
 import common.Constants;
-import common.DBConnection;
+import common.ReviewBatcher;
+import common.ReviewSource;
 import common.ReviewerConfig;
+import org.voltdb.VoltTable;
 import org.voltdb.client.ClientResponse;
 import reviewer.Benchmark;
 import util.StdOut;
+import util.VirtualThreads;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
 
 public class SyncBenchmark extends NativeAPIBenchmark {
+    // Measured calls and their total latency, per simulated reviewer.
+    // Each reviewer only writes its own slot, results are read after joining.
+    final long[] reviewerCalls;
+    final long[] reviewerLatencyNanos;
 
     public SyncBenchmark(ReviewerConfig config) {
         super(config);
+
+        reviewerCalls = new long[config.threads];
+        reviewerLatencyNanos = new long[config.threads];
     }
 
     /**
      * While <code>benchmarkComplete</code> is set to false, run as many
      * synchronous procedure calls as possible and record the results.
+     * With a think time, the simulated reviewer pauses between reviews.
+     * With a load profile, all reviewers share its pace instead.
      */
     class ReviewerThread implements Runnable {
+        private final int reviewer;
+        private final ReviewSource reviews = createReviewSource();
+
+        ReviewerThread(int reviewer) {
+            this.reviewer = reviewer;
+        }
+
+        /**
+         * Pauses for an exponentially distributed think time, if any.
+         */
+        void think() {
+            if (config.thinktime <= 0) return;
+            try {
+                double u = ThreadLocalRandom.current().nextDouble();
+                Thread.sleep((long) (-Math.log(1 - u) * config.thinktime));
+            } catch (InterruptedException ignored) {
+            }
+        }
+
+        /**
+         * Waits for the next review, following the load profile if any.
+         *
+         * @return the load profile segment of the review, -1 if none.
+         */
+        int pace() {
+            if (loadProfile == null) {
+                think();
+                return -1;
+            }
+            try {
+                return loadProfile.acquire();
+            } catch (InterruptedException e) {
+                return -1;
+            }
+        }
 
         @Override
         public void run() {
+            if (config.batchsize > 1) {
+                runBatched();
+                return;
+            }
+
             while (warmupComplete.get() == false) {
-                // Get the next review
-                BookReviewsGenerator.Review call = reviewsGenerator.receive();
+                pace();
 
-                // synchronously call the "Review" procedure
+                // Get the next review, none left once a limited stream is exhausted
+                BookReviewsGenerator.Review call = reviews.receive();
+                if (call == null) return;
+
+                // synchronously call the "Review" procedure, or its dry run
                 try {
-                    client.callProcedure("Review", call.email, call.review,
-                            call.bookId, config.maxreviews);
+                    if (config.quota && !config.warmupdryrun) {
+                        reviewWithQuota(client, call);
+                    } else {
+                        client.callProcedure(reviewProcedure(false), call.email, call.review,
+                                call.bookId, config.maxreviews);
+                    }
                 } catch (Exception e) {
                 }
             }
 
             while (benchmarkComplete.get() == false) {
-                // Get the next review
-                BookReviewsGenerator.Review call = reviewsGenerator.receive();
+                int segment = pace();
+
+                // Get the next review, none left once a limited stream is exhausted
+                BookReviewsGenerator.Review call = reviews.receive();
+                if (call == null) return;
 
                 // synchronously call the "Review" procedure
+                long start = System.nanoTime();
+                long resultCode = -1;
                 try {
-                    ClientResponse response = client.callProcedure("Review",
-                            call.email, call.review,
-                            call.bookId,
-                            config.maxreviews);
+                    if (config.quota) {
+                        // reserve on the email partition, then post on the book partition
+                        resultCode = reviewWithQuota(client, call);
+                    } else {
+                        ClientResponse response = client.callProcedure("Review",
+                                call.email, call.review,
+                                call.bookId,
+                                config.maxreviews);
 
-                    long resultCode = response.getResults()[0].asScalarLong();
-                    stats.updateResults(resultCode);
+                        resultCode = response.getResults()[0].asScalarLong();
+                    }
                 } catch (Exception e) {
-                    stats.incrementFailedReviews();
+                }
+                long latency = System.nanoTime() - start;
+                boolean success = resultCode != -1;
+                if (success) {
+                    stats.updateResults(resultCode, latency);
+                } else {
+                    stats.recordFailedReview(latency);
+                }
+                reviewerCalls[reviewer]++;
+                reviewerLatencyNanos[reviewer] += latency;
+                if (loadProfile != null) {
+                    loadProfile.record(segment, latency, success);
                 }
             }
         }
+
+        /**
+         * Same as the plain loop, but groups reviews per book and synchronously
+         * posts each full (or expired) batch through the "ReviewBatch" procedure.
+         */
+        void runBatched() {
+            ReviewBatcher batcher = new ReviewBatcher(config.batchsize, config.batchflush, new ReviewBatcher.Sink() {
+                @Override
+                public void flush(int bookId, String[] emails, String[] reviews, int[] segments) {
+                    boolean record = warmupComplete.get();
+                    long start = System.nanoTime();
+                    try {
+                        ClientResponse response = client.callProcedure(reviewBatchProcedure(record),
+                                bookId, emails, reviews,
+                                config.maxreviews);
+
+                        // results of the warmup phase are not recorded
+                        if (!record) return;
+
+                        long latency = System.nanoTime() - start;
+                        VoltTable resultCodes = response.getResults()[0];
+                        while (resultCodes.advanceRow()) {
+                            stats.updateResults(resultCodes.getLong(0), latency);
+                        }
+                        if (loadProfile != null) loadProfile.record(segments, latency, true);
+                    } catch (Exception e) {
+                        if (!record) return;
+                        stats.incrementFailedReviews(emails.length);
+                        if (loadProfile != null) loadProfile.record(segments, System.nanoTime() - start, false);
+                    }
+                }
+            });
+
+            try {
+                while (benchmarkComplete.get() == false) {
+                    int segment = loadProfile != null ? pace() : -1;
+                    BookReviewsGenerator.Review call = reviews.receive();
+                    if (call == null) break;
+                    batcher.add(call, segment);
+                }
+                batcher.flushAll();
+            } catch (Exception e) {
+                // the sink records its own failures
+            }
+        }
     }
 
     /**
@@ -78,7 +205,8 @@ public class SyncBenchmark extends NativeAPIBenchmark {
         StdOut.println(Constants.HORIZONTAL_RULE);
 
         // connect to one or more servers, loop until success
-        DBConnection.connect(config.servers, client);
+        connectClients();
+        startMetricsEndpoint();
 
         // initialize using synchronous call
         StdOut.println("\nPopulating Static Tables\n");
@@ -88,23 +216,27 @@ public class SyncBenchmark extends NativeAPIBenchmark {
         StdOut.println(" Starting Benchmark");
         StdOut.println(Constants.HORIZONTAL_RULE);
 
-        // create/start the requested number of threads
+        // create/start the requested number of threads, one per simulated reviewer
         Thread[] reviewrThreads = new Thread[config.threads];
         for (int i = 0; i < config.threads; ++i) {
-            reviewrThreads[i] = new Thread(new ReviewerThread());
+            reviewrThreads[i] = config.virtualthreads ?
+                    VirtualThreads.newThread(new ReviewerThread(i), "reviewer-" + i) :
+                    new Thread(new ReviewerThread(i));
             reviewrThreads[i].start();
         }
 
         // Run the benchmark loop for the requested warmup time
         StdOut.println("Warming up...");
-        Thread.sleep(1000l * config.warmup);
+        awaitWarmup();
 
         // signal to threads to end the warmup phase
         warmupComplete.set(true);
+        if (loadProfile != null) {
+            loadProfile.start();
+        }
 
         // reset the stats after warmup
-        fullStatsContext.fetchAndResetBaseline();
-        periodicStatsContext.fetchAndResetBaseline();
+        resetStatsBaselines();
 
         // print periodic statistics to the console
         stats.setStartTS(System.currentTimeMillis());
@@ -112,7 +244,7 @@ public class SyncBenchmark extends NativeAPIBenchmark {
 
         // Run the benchmark loop for the requested warmup time
         StdOut.println("\nRunning benchmark...");
-        Thread.sleep(1000l * config.duration);
+        Thread.sleep(1000l * getDuration());
 
         // stop the threads
         benchmarkComplete.set(true);
@@ -121,7 +253,7 @@ public class SyncBenchmark extends NativeAPIBenchmark {
         timer.cancel();
 
         // block until all outstanding txns return
-        client.drain();
+        drainClients();
 
         // join on the threads
         for (Thread t : reviewrThreads) {
@@ -130,9 +262,41 @@ public class SyncBenchmark extends NativeAPIBenchmark {
 
         // print the summary results
         printResults();
+        printReviewerLatencies();
 
         // close down the client connections
-        client.close();
+        closeClients();
+    }
+
+    /**
+     * Prints how the average latency seen by each simulated reviewer is
+     * distributed across reviewers, along with their number of reviews.
+     */
+    void printReviewerLatencies() {
+        double[] latencies = new double[reviewerCalls.length];
+        long[] calls = reviewerCalls.clone();
+        int active = 0;
+        for (int i = 0; i < reviewerCalls.length; i++) {
+            if (reviewerCalls[i] > 0) {
+                latencies[active++] = reviewerLatencyNanos[i] / 1000000.0 / reviewerCalls[i];
+            }
+        }
+        if (active == 0) return;
+        latencies = Arrays.copyOf(latencies, active);
+        Arrays.sort(latencies);
+        Arrays.sort(calls);
+
+        StdOut.print(Constants.HORIZONTAL_RULE);
+        StdOut.println(" Per Reviewer Statistics");
+        StdOut.println(Constants.HORIZONTAL_RULE);
+        StdOut.printf("Reviewers (%s threads):  %,9d\n",
+                config.virtualthreads ? "virtual" : "platform", calls.length);
+        StdOut.printf("Reviews per reviewer min/median/max: %,d/%,d/%,d\n",
+                calls[0], calls[calls.length / 2], calls[calls.length - 1]);
+        StdOut.printf("Reviewer average latency, best:     %,9.2f ms\n", latencies[0]);
+        StdOut.printf("Reviewer average latency, median:   %,9.2f ms\n", latencies[active / 2]);
+        StdOut.printf("Reviewer average latency, 99th:     %,9.2f ms\n", latencies[(int) (active * .99)]);
+        StdOut.printf("Reviewer average latency, worst:    %,9.2f ms\n\n", latencies[active - 1]);
     }
 
     /**
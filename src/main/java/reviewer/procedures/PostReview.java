@@ -0,0 +1,39 @@
+package reviewer.procedures;
+
+import common.Constants;
+import org.voltdb.ProcInfo;
+import org.voltdb.SQLStmt;
+import org.voltdb.VoltProcedure;
+import org.voltdb.VoltTable;
+
+/**
+ * Posts a review whose reviewer quota has already been reserved through
+ * {@link ReserveQuota}: only the book is validated here.
+ */
+
+@ProcInfo(partitionInfo = "reviews.book_id: 2", singlePartition = true)
+public class PostReview extends VoltProcedure {
+
+    // Checks if the review is for a valid book
+    public final SQLStmt checkBookStmt = new SQLStmt(
+            "SELECT book_id FROM books WHERE book_id = ?;");
+
+    // Records a review
+    public final SQLStmt insertReviewStmt = new SQLStmt(
+            "INSERT INTO reviews (email, review, book_id) VALUES (?, ?, ?);");
+
+    public long run(String email, String review, int bookId) {
+        voltQueueSQL(checkBookStmt, EXPECT_ZERO_OR_ONE_ROW, bookId);
+        VoltTable validation[] = voltExecuteSQL();
+
+        if (validation[0].getRowCount() == 0) {
+            return Constants.ERR_INVALID_BOOK;
+        }
+
+        // Post the review
+        voltQueueSQL(insertReviewStmt, EXPECT_SCALAR_MATCH(1), email, review, bookId);
+        voltExecuteSQL(true);
+
+        return Constants.REVIEW_SUCCESSFUL;
+    }
+}
@@ -0,0 +1,23 @@
+package reviewer.procedures;
+
+import org.voltdb.ProcInfo;
+import org.voltdb.SQLStmt;
+import org.voltdb.VoltProcedure;
+
+/**
+ * Gives back a review reserved by {@link ReserveQuota} when the review itself
+ * could not be posted, for instance because the book is invalid.
+ */
+
+@ProcInfo(partitionInfo = "reviewer_quota.email: 0", singlePartition = true)
+public class ReleaseQuota extends VoltProcedure {
+
+    // Releases one reserved review
+    public final SQLStmt decrementQuotaStmt = new SQLStmt(
+            "UPDATE reviewer_quota SET num_reviews = num_reviews - 1 WHERE email = ? AND num_reviews > 0;");
+
+    public long run(String email) {
+        voltQueueSQL(decrementQuotaStmt, email);
+        return voltExecuteSQL(true)[0].asScalarLong();
+    }
+}
@@ -0,0 +1,45 @@
+package reviewer.procedures;
+
+import common.Constants;
+import org.voltdb.ProcInfo;
+import org.voltdb.SQLStmt;
+import org.voltdb.VoltProcedure;
+import org.voltdb.VoltTable;
+
+/**
+ * Reserves one review out of a reviewer's quota. The reviewer_quota table is
+ * partitioned on email, so this runs on the single partition owning the
+ * reviewer and sees the reviewer's global count, whichever book is reviewed.
+ */
+
+@ProcInfo(partitionInfo = "reviewer_quota.email: 0", singlePartition = true)
+public class ReserveQuota extends VoltProcedure {
+
+    // Gets the number of reviews reserved so far by the reviewer
+    public final SQLStmt checkQuotaStmt = new SQLStmt(
+            "SELECT num_reviews FROM reviewer_quota WHERE email = ?;");
+
+    // Starts the quota of a new reviewer
+    public final SQLStmt insertQuotaStmt = new SQLStmt(
+            "INSERT INTO reviewer_quota (email, num_reviews) VALUES (?, 1);");
+
+    // Reserves one more review for a known reviewer
+    public final SQLStmt incrementQuotaStmt = new SQLStmt(
+            "UPDATE reviewer_quota SET num_reviews = num_reviews + 1 WHERE email = ?;");
+
+    public long run(String email, long maxReviewsPerEmail) {
+        voltQueueSQL(checkQuotaStmt, EXPECT_ZERO_OR_ONE_ROW, email);
+        VoltTable quota = voltExecuteSQL()[0];
+
+        if (quota.getRowCount() == 0) {
+            voltQueueSQL(insertQuotaStmt, EXPECT_SCALAR_MATCH(1), email);
+        } else if (quota.asScalarLong() >= maxReviewsPerEmail) {
+            return Constants.ERR_REVIEWER_OVER_REVIEW_LIMIT;
+        } else {
+            voltQueueSQL(incrementQuotaStmt, EXPECT_SCALAR_MATCH(1), email);
+        }
+        voltExecuteSQL(true);
+
+        return Constants.REVIEW_SUCCESSFUL;
+    }
+}
@@ -3,8 +3,6 @@ package reviewer.procedures;
 import common.Constants;
 import org.voltdb.ProcInfo;
 import org.voltdb.SQLStmt;
-import org.voltdb.VoltProcedure;
-import org.voltdb.VoltTable;
 
 /**
  * Accepts a review, enforcing business logic: make sure the review is for a valid
@@ -13,33 +11,16 @@ import org.voltdb.VoltTable;
  */
 
 @ProcInfo(partitionInfo = "reviews.book_id: 2", singlePartition = true)
-public class Review extends VoltProcedure {
-
-    // Checks if the review is for a valid book
-    public final SQLStmt checkBookStmt = new SQLStmt(
-            "SELECT book_id FROM books WHERE book_id = ?;");
-
-    // Checks if the reviewer has exceeded their allowed number of reviews
-    public final SQLStmt checkReviewerStmt = new SQLStmt(
-            "SELECT num_reviews FROM v_reviews_by_email WHERE email = ?;");
+public class Review extends ReviewValidation {
 
     // Records a review
     public final SQLStmt insertReviewStmt = new SQLStmt(
             "INSERT INTO reviews (email, review, book_id) VALUES (?, ?, ?);");
 
     public long run(String email, String review, int bookId, long maxReviewsPerEmail) {
-        // Queue up validation
-        voltQueueSQL(checkBookStmt, EXPECT_ZERO_OR_ONE_ROW, bookId);
-        voltQueueSQL(checkReviewerStmt, EXPECT_ZERO_OR_ONE_ROW, email);
-        VoltTable validation[] = voltExecuteSQL();
-
-        if (validation[0].getRowCount() == 0) {
-            return Constants.ERR_INVALID_BOOK;
-        }
-
-        if ((validation[1].getRowCount() == 1) &&
-                (validation[1].asScalarLong() >= maxReviewsPerEmail)) {
-            return Constants.ERR_REVIEWER_OVER_REVIEW_LIMIT;
+        long resultCode = validateReview(email, bookId, maxReviewsPerEmail, false);
+        if (resultCode != Constants.REVIEW_SUCCESSFUL) {
+            return resultCode;
         }
 
         // Post the review
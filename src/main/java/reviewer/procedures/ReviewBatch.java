@@ -0,0 +1,48 @@
+package reviewer.procedures;
+
+import common.Constants;
+import org.voltdb.ProcInfo;
+import org.voltdb.SQLStmt;
+import org.voltdb.VoltTable;
+import org.voltdb.VoltType;
+
+/**
+ * Accepts a batch of reviews for a single book in one transaction, applying the
+ * same business logic as {@link Review} to every row: the book must be valid and
+ * each reviewer must not be above the number of allowed reviews.
+ *
+ * Returns a single table with one result code per submitted review, in order.
+ */
+
+@ProcInfo(partitionInfo = "reviews.book_id: 0", singlePartition = true)
+public class ReviewBatch extends ReviewValidation {
+
+    // Records a review
+    public final SQLStmt insertReviewStmt = new SQLStmt(
+            "INSERT INTO reviews (email, review, book_id) VALUES (?, ?, ?);");
+
+    public VoltTable run(int bookId, String[] emails, String[] reviews, long maxReviewsPerEmail) {
+        if (emails.length != reviews.length) {
+            throw new VoltAbortException("emails and reviews must be of the same length");
+        }
+
+        VoltTable results = new VoltTable(new VoltTable.ColumnInfo("result_code", VoltType.BIGINT));
+        long[] resultCodes = validateBatch(bookId, emails, maxReviewsPerEmail, false);
+
+        boolean queued = false;
+        for (int i = 0; i < emails.length; i++) {
+            if (resultCodes[i] == Constants.REVIEW_SUCCESSFUL) {
+                voltQueueSQL(insertReviewStmt, EXPECT_SCALAR_MATCH(1), emails[i], reviews[i], bookId);
+                queued = true;
+            }
+            results.addRow(resultCodes[i]);
+        }
+
+        // Post the accepted reviews
+        if (queued) {
+            voltExecuteSQL(true);
+        }
+
+        return results;
+    }
+}
@@ -0,0 +1,28 @@
+package reviewer.procedures;
+
+import org.voltdb.ProcInfo;
+import org.voltdb.VoltTable;
+import org.voltdb.VoltType;
+
+/**
+ * Validates a batch of reviews for one book exactly like ReviewBatch, with the
+ * same parameters and result codes, but never posts them. The benchmarks call
+ * it during their warmup when batching, so the warmup heats the same validation
+ * path without adding reviews.
+ */
+
+@ProcInfo(partitionInfo = "reviews.book_id: 0", singlePartition = true)
+public class ReviewBatchDryRun extends ReviewValidation {
+
+    public VoltTable run(int bookId, String[] emails, String[] reviews, long maxReviewsPerEmail) {
+        if (emails.length != reviews.length) {
+            throw new VoltAbortException("emails and reviews must be of the same length");
+        }
+
+        VoltTable results = new VoltTable(new VoltTable.ColumnInfo("result_code", VoltType.BIGINT));
+        for (long resultCode : validateBatch(bookId, emails, maxReviewsPerEmail, true)) {
+            results.addRow(resultCode);
+        }
+        return results;
+    }
+}
@@ -0,0 +1,19 @@
+package reviewer.procedures;
+
+import org.voltdb.ProcInfo;
+
+/**
+ * Validates a review exactly like Review, with the same parameters and result
+ * codes, but never posts it. The benchmarks call it during their warmup, so
+ * the warmup heats the same validation path without adding reviews that would
+ * count towards the limit of their reviewers in the measured phase.
+ */
+
+@ProcInfo(partitionInfo = "reviews.book_id: 2", singlePartition = true)
+public class ReviewDryRun extends ReviewValidation {
+
+    public long run(String email, String review, int bookId, long maxReviewsPerEmail) {
+        // The review would be posted when valid
+        return validateReview(email, bookId, maxReviewsPerEmail, true);
+    }
+}
@@ -0,0 +1,92 @@
+package reviewer.procedures;
+
+import common.Constants;
+import org.voltdb.SQLStmt;
+import org.voltdb.VoltProcedure;
+import org.voltdb.VoltTable;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Validation shared by {@link Review}, {@link ReviewBatch} and their dry runs,
+ * so the procedures that post reviews and the ones that only check them can
+ * not drift apart: the book must be valid and the reviewer must not be above
+ * the number of allowed reviews.
+ */
+public abstract class ReviewValidation extends VoltProcedure {
+
+    // Checks if the review is for a valid book
+    public final SQLStmt checkBookStmt = new SQLStmt(
+            "SELECT book_id FROM books WHERE book_id = ?;");
+
+    // Checks if the reviewer has exceeded their allowed number of reviews
+    public final SQLStmt checkReviewerStmt = new SQLStmt(
+            "SELECT num_reviews FROM v_reviews_by_email WHERE email = ?;");
+
+    /**
+     * @param isFinalSQL true when no SQL follows the validation.
+     * @return REVIEW_SUCCESSFUL if the review can be posted, the error code otherwise.
+     */
+    protected long validateReview(String email, int bookId, long maxReviewsPerEmail, boolean isFinalSQL) {
+        // Queue up validation
+        voltQueueSQL(checkBookStmt, EXPECT_ZERO_OR_ONE_ROW, bookId);
+        voltQueueSQL(checkReviewerStmt, EXPECT_ZERO_OR_ONE_ROW, email);
+        VoltTable validation[] = voltExecuteSQL(isFinalSQL);
+
+        if (validation[0].getRowCount() == 0) {
+            return Constants.ERR_INVALID_BOOK;
+        }
+
+        if ((validation[1].getRowCount() == 1) &&
+                (validation[1].asScalarLong() >= maxReviewsPerEmail)) {
+            return Constants.ERR_REVIEWER_OVER_REVIEW_LIMIT;
+        }
+
+        return Constants.REVIEW_SUCCESSFUL;
+    }
+
+    /**
+     * Validates a batch of reviews for one book in a single round of queries.
+     *
+     * @param isFinalSQL true when no SQL follows the validation.
+     * @return one result code per review, in order, REVIEW_SUCCESSFUL for the
+     * reviews that can be posted.
+     */
+    protected long[] validateBatch(int bookId, String[] emails, long maxReviewsPerEmail, boolean isFinalSQL) {
+        long[] resultCodes = new long[emails.length];
+
+        // Queue up validation of the book and of every reviewer in one batch
+        voltQueueSQL(checkBookStmt, EXPECT_ZERO_OR_ONE_ROW, bookId);
+        for (String email : emails) {
+            voltQueueSQL(checkReviewerStmt, EXPECT_ZERO_OR_ONE_ROW, email);
+        }
+        VoltTable validation[] = voltExecuteSQL(isFinalSQL);
+
+        if (validation[0].getRowCount() == 0) {
+            for (int i = 0; i < emails.length; i++) {
+                resultCodes[i] = Constants.ERR_INVALID_BOOK;
+            }
+            return resultCodes;
+        }
+
+        // the same reviewer may appear more than once in a batch, so keep a
+        // running count of what has been accepted so far
+        Map<String, Long> reviewCounts = new HashMap<String, Long>();
+        for (int i = 0; i < emails.length; i++) {
+            Long count = reviewCounts.get(emails[i]);
+            if (count == null) {
+                count = validation[i + 1].getRowCount() == 1 ? validation[i + 1].asScalarLong() : 0;
+            }
+
+            if (count >= maxReviewsPerEmail) {
+                resultCodes[i] = Constants.ERR_REVIEWER_OVER_REVIEW_LIMIT;
+            } else {
+                resultCodes[i] = Constants.REVIEW_SUCCESSFUL;
+                count++;
+            }
+            reviewCounts.put(emails[i], count);
+        }
+        return resultCodes;
+    }
+}
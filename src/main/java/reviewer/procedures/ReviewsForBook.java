@@ -0,0 +1,34 @@
+package reviewer.procedures;
+
+import org.voltdb.SQLStmt;
+import org.voltdb.VoltProcedure;
+import org.voltdb.VoltTable;
+import org.voltdb.VoltType;
+
+/**
+ * Gives the count of reviews for a given book, read from the per-book rollup.
+ * A book without any review has no row in the rollup, so the count is summed
+ * here rather than with SUM, which would return NULL instead of 0.
+ */
+
+public class ReviewsForBook extends VoltProcedure {
+
+    // Reads the rollup rows of the books with the given name
+    public final SQLStmt countStmt = new SQLStmt(
+            "SELECT v_reviews_by_book.num_reviews FROM v_reviews_by_book, books"
+                    + " WHERE v_reviews_by_book.book_id = books.book_id AND books.book_name = ?;");
+
+    public VoltTable run(String bookName) {
+        voltQueueSQL(countStmt, bookName);
+        VoltTable rows = voltExecuteSQL(true)[0];
+
+        long numReviews = 0;
+        while (rows.advanceRow()) {
+            numReviews += rows.getLong(0);
+        }
+
+        VoltTable result = new VoltTable(new VoltTable.ColumnInfo("num_reviews", VoltType.BIGINT));
+        result.addRow(numReviews);
+        return result;
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Sandeep Kunkunuru
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package services;
+
+import models.Stats;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of the websocket gateway, updated by the endpoints and served by
+ * {@link MetricsServlet}, along with the last benchmark statistics relayed.
+ */
+public final class GatewayMetrics {
+    public static final AtomicLong sessionsOpened = new AtomicLong();
+    public static final AtomicLong messagesRelayed = new AtomicLong();
+    public static final AtomicLong statsRelayed = new AtomicLong();
+    public static final AtomicLong relayFailures = new AtomicLong();
+
+    // last statistics received on /review, null until then
+    public static volatile Stats lastStats;
+
+    private GatewayMetrics() {
+    }
+}
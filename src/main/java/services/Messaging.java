@@ -44,6 +44,7 @@ public class Messaging {
 	public void open(final Session session, @PathParam("topic") final String topic) {
 		log.info("session openend and bound to topic: " + topic);
 		session.getUserProperties().put("topic", topic);
+		GatewayMetrics.sessionsOpened.incrementAndGet();
 	}
 
 	@OnMessage
@@ -54,9 +55,11 @@ public class Messaging {
 				if (s.isOpen()
 						&& topic.equals(s.getUserProperties().get("topic"))) {
 					s.getBasicRemote().sendObject(message);
+					GatewayMetrics.messagesRelayed.incrementAndGet();
 				}
 			}
 		} catch (IOException | EncodeException e) {
+			GatewayMetrics.relayFailures.incrementAndGet();
 			log.log(Level.WARNING, "onMessage failed", e);
 		}
 	}
@@ -0,0 +1,70 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Sandeep Kunkunuru
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package services;
+
+import models.Stats;
+import util.MetricsText;
+
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Serves the gateway counters, the last benchmark statistics relayed through
+ * the /review endpoint and the JVM figures of the web app, in the Prometheus
+ * text format.
+ */
+@WebServlet("/metrics")
+public class MetricsServlet extends HttpServlet {
+
+	@Override
+	protected void doGet(final HttpServletRequest request, final HttpServletResponse response)
+			throws ServletException, IOException {
+		MetricsText text = new MetricsText();
+		text.counter("gateway_sessions_opened_total", "Websocket sessions opened.", GatewayMetrics.sessionsOpened.get());
+		text.counter("gateway_messages_relayed_total", "Messages relayed on /messaging.", GatewayMetrics.messagesRelayed.get());
+		text.counter("gateway_stats_relayed_total", "Statistics relayed on /review.", GatewayMetrics.statsRelayed.get());
+		text.counter("gateway_relay_failures_total", "Messages that could not be relayed.", GatewayMetrics.relayFailures.get());
+
+		Stats stats = GatewayMetrics.lastStats;
+		if (stats != null) {
+			text.gauge("reviewer_throughput", "Last relayed benchmark throughput, in calls per second.", stats.getThroughput());
+			text.gauge("reviewer_latency_average_seconds", "Last relayed average latency.", stats.getLatency() / 1000.0);
+			text.gauge("reviewer_latency_95_seconds", "Last relayed 95th percentile latency.", stats.getLatency_95() / 1000.0);
+			text.gauge("reviewer_invocations", "Last relayed number of reviews.", stats.getInvocations());
+			String reviews = "Last relayed number of reviews, by outcome.";
+			text.gauge("reviewer_reviews", reviews, stats.getAccepted(), "outcome", Stats.OUTCOME_KEYS[Stats.ACCEPTED]);
+			text.gauge("reviewer_reviews", reviews, stats.getInvalidEntity(), "outcome", Stats.OUTCOME_KEYS[Stats.INVALID_BOOK]);
+			text.gauge("reviewer_reviews", reviews, stats.getInvalid(), "outcome", Stats.OUTCOME_KEYS[Stats.OVER_LIMIT]);
+			text.gauge("reviewer_reviews", reviews, stats.getFailed(), "outcome", Stats.OUTCOME_KEYS[Stats.FAILED]);
+		}
+
+		response.setContentType(MetricsText.CONTENT_TYPE);
+		response.getWriter().write(text.jvm().toString());
+	}
+}
@@ -27,7 +27,9 @@ package services;
 import models.Stats;
 
 import javax.json.Json;
+import javax.json.JsonNumber;
 import javax.json.JsonObject;
+import javax.json.JsonValue;
 import javax.websocket.*;
 import java.io.StringReader;
 
@@ -50,29 +52,44 @@ public class ReviewStatsCodec implements Encoder.Text<Stats>, Decoder.Text<Stats
                 .add("errors", stats.getErrors())
                 .add("latency", stats.getLatency())
                 .add("latency_95", stats.getLatency_95())
-                .toString();
+                .build().toString();
     }
 
     @Override
     public Stats decode(final String textMessage) throws DecodeException {
-        Stats stats = new Stats();
+        Stats stats = Stats.forValues();
         JsonObject obj = Json.createReader(new StringReader(textMessage)).readObject();
-        stats.setStartTS(Long.parseLong(obj.getString("benchmarkStartTS")));
-        stats.setEndTS(Long.parseLong(obj.getString("currentTS")));
-        stats.setInvocations(Long.parseLong(obj.getString("invocations")));
-        stats.setThroughput(Long.parseLong(obj.getString("throughput")));
-        stats.setAborts(Long.parseLong(obj.getString("aborts")));
-        stats.setErrors(Long.parseLong(obj.getString("errors")));
-        stats.setLatency(Long.parseLong(obj.getString("latency")));
-        stats.setLatency_95(Long.parseLong(obj.getString("latency_95")));
-        stats.setAccepted(Long.parseLong(obj.getString("acceptedReviews")));
-        stats.setInvalidEntity(Long.parseLong(obj.getString("badBookReviews")));
-        stats.setInvalid(Long.parseLong(obj.getString("badReviewCountReviews")));
-        stats.setFailed(Long.parseLong(obj.getString("failedReviews")));
+        stats.setStartTS(longValue(obj, "benchmarkStartTS"));
+        stats.setEndTS(longValue(obj, "currentTS"));
+        stats.setInvocations(longValue(obj, "invocations"));
+        stats.setThroughput(longValue(obj, "throughput"));
+        stats.setAborts(longValue(obj, "aborts"));
+        stats.setErrors(longValue(obj, "errors"));
+        stats.setLatency(doubleValue(obj, "latency"));
+        stats.setLatency_95(doubleValue(obj, "latency_95"));
+        stats.setAccepted(longValue(obj, "acceptedReviews"));
+        stats.setInvalidEntity(longValue(obj, "badBookReviews"));
+        stats.setInvalid(longValue(obj, "badReviewCountReviews"));
+        stats.setFailed(longValue(obj, "failedReviews"));
 
         return stats;
     }
 
+    /**
+     * Fields are written as JSON numbers, but older clients sent them as strings.
+     */
+    private static long longValue(JsonObject obj, String name) {
+        JsonValue value = obj.get(name);
+        if (value instanceof JsonNumber) return ((JsonNumber) value).longValue();
+        return Long.parseLong(obj.getString(name));
+    }
+
+    private static double doubleValue(JsonObject obj, String name) {
+        JsonValue value = obj.get(name);
+        if (value instanceof JsonNumber) return ((JsonNumber) value).doubleValue();
+        return Double.parseDouble(obj.getString(name));
+    }
+
     @Override
     public boolean willDecode(final String s) {
         return true;
@@ -43,10 +43,13 @@ public class Reviewing {
 	@OnOpen
 	public void open(final Session session, @PathParam("topic") final String dummy) {
 		log.info("session openend ");
+		GatewayMetrics.sessionsOpened.incrementAndGet();
 	}
 
 	@OnMessage
 	public void onMessage(final Session session, final Stats stats) {
+        GatewayMetrics.lastStats = stats;
+        GatewayMetrics.statsRelayed.incrementAndGet();
         try {
             for (Session s : session.getOpenSessions()) {
                 if (s.isOpen()) {
@@ -54,6 +57,7 @@ public class Reviewing {
                 }
             }
         } catch (IOException | EncodeException e) {
+            GatewayMetrics.relayFailures.incrementAndGet();
             log.log(Level.WARNING, "onMessage failed", e);
         }
 	}
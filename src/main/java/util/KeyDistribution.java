@@ -0,0 +1,140 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Sandeep Kunkunuru
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package util;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Picks keys in [0, size) following a uniform, zipfian or hotspot distribution.
+ * Instances are immutable, the randomness comes from the caller's generator,
+ * so a distribution can be shared between threads.
+ */
+public abstract class KeyDistribution {
+    public static final String UNIFORM = "uniform";
+    public static final String ZIPF = "zipf";
+    public static final String HOTSPOT = "hotspot";
+
+    protected final int size;
+
+    protected KeyDistribution(int size) {
+        this.size = size;
+    }
+
+    /**
+     * @return the next key, between 0 (inclusive) and size (exclusive).
+     */
+    public abstract int next(Random rand);
+
+    public int size() {
+        return size;
+    }
+
+    public static boolean isKnown(String name) {
+        return UNIFORM.equals(name) || ZIPF.equals(name) || HOTSPOT.equals(name);
+    }
+
+    /**
+     * @param name         uniform, zipf or hotspot.
+     * @param size         number of keys.
+     * @param zipfExponent skew of the zipf distribution, 1.0 being the classic zipf law.
+     * @param hotFraction  fraction of the keys in the hot set of the hotspot distribution.
+     * @param hotAccess    fraction of the picks going to the hot set of the hotspot distribution.
+     */
+    public static KeyDistribution create(String name, int size, double zipfExponent,
+                                         double hotFraction, double hotAccess) {
+        if (ZIPF.equals(name)) {
+            return new Zipf(size, zipfExponent);
+        } else if (HOTSPOT.equals(name)) {
+            return new Hotspot(size, hotFraction, hotAccess);
+        } else if (UNIFORM.equals(name)) {
+            return new Uniform(size);
+        }
+        throw new IllegalArgumentException("Unknown distribution: " + name);
+    }
+
+    public static class Uniform extends KeyDistribution {
+        public Uniform(int size) {
+            super(size);
+        }
+
+        @Override
+        public int next(Random rand) {
+            return rand.nextInt(size);
+        }
+    }
+
+    /**
+     * Key k is picked with a probability proportional to 1 / (k + 1)^exponent.
+     * The cumulative distribution is computed once, so picking is a binary search.
+     */
+    public static class Zipf extends KeyDistribution {
+        private final double[] cdf;
+
+        public Zipf(int size, double exponent) {
+            super(size);
+            cdf = new double[size];
+
+            double sum = 0;
+            for (int i = 0; i < size; i++) {
+                sum += 1.0 / Math.pow(i + 1, exponent);
+                cdf[i] = sum;
+            }
+            for (int i = 0; i < size; i++) {
+                cdf[i] /= sum;
+            }
+        }
+
+        @Override
+        public int next(Random rand) {
+            int index = Arrays.binarySearch(cdf, rand.nextDouble());
+            // not found returns -(insertion point) - 1
+            return Math.min(size - 1, index >= 0 ? index : -index - 1);
+        }
+    }
+
+    /**
+     * The first <code>hotFraction</code> of the keys receive <code>hotAccess</code>
+     * of the picks, the remaining keys share the rest uniformly.
+     */
+    public static class Hotspot extends KeyDistribution {
+        private final int hotSize;
+        private final double hotAccess;
+
+        public Hotspot(int size, double hotFraction, double hotAccess) {
+            super(size);
+            this.hotSize = Math.max(1, Math.min(size, (int) Math.ceil(size * hotFraction)));
+            this.hotAccess = hotAccess;
+        }
+
+        @Override
+        public int next(Random rand) {
+            if (hotSize == size || rand.nextDouble() < hotAccess) {
+                return rand.nextInt(hotSize);
+            }
+            return hotSize + rand.nextInt(size - hotSize);
+        }
+    }
+}
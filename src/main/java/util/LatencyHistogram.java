@@ -0,0 +1,210 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Sandeep Kunkunuru
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package util;
+
+/**
+ * Concurrent latency histogram in the spirit of HdrHistogram: values, in
+ * microseconds, are counted in log-linear buckets holding two significant
+ * digits (1.6% worst case relative error) from 1us up to about 25 days,
+ * in a fixed array of a couple thousand counters.
+ *
+ * Recording is lock free and allocation free, so it can be done from client
+ * callback threads. The counters are striped by thread like {@link StripedCounters},
+ * so threads recording at the same time seldom write to the same cache line.
+ * Copies and decoded histograms, which are not recorded into, use a single stripe.
+ */
+public class LatencyHistogram {
+    // values below this are counted exactly, one bucket per microsecond
+    private static final int LINEAR_BUCKETS = 128;
+    // number of buckets for every power of two above that
+    private static final int SUB_BUCKETS = 64;
+    private static final int MAGNITUDES = 34;
+    static final int BUCKET_COUNT = LINEAR_BUCKETS + MAGNITUDES * SUB_BUCKETS;
+    static final long MAX_VALUE = valueAt(BUCKET_COUNT - 1);
+
+    // the bucket counters are followed by the total count and total latency
+    private static final int TOTAL_COUNT = BUCKET_COUNT;
+    private static final int TOTAL_MICROS = BUCKET_COUNT + 1;
+
+    private final StripedCounters counts;
+
+    /**
+     * Creates a histogram recorded into by many threads.
+     */
+    public LatencyHistogram() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a histogram recorded into by about <code>stripes</code> threads
+     * at once, a single stripe being enough for a histogram that is not shared.
+     */
+    public LatencyHistogram(int stripes) {
+        counts = new StripedCounters(BUCKET_COUNT + 2, stripes);
+    }
+
+    static int indexOf(long micros) {
+        if (micros < LINEAR_BUCKETS) {
+            return (int) Math.max(0, micros);
+        }
+        if (micros >= MAX_VALUE) {
+            return BUCKET_COUNT - 1;
+        }
+        // keep the 7 most significant bits, the top one always being set
+        int shift = 63 - Long.numberOfLeadingZeros(micros) - 6;
+        return LINEAR_BUCKETS + (shift - 1) * SUB_BUCKETS + (int) ((micros >>> shift) - SUB_BUCKETS);
+    }
+
+    /**
+     * @return the highest value counted in the given bucket.
+     */
+    static long valueAt(int index) {
+        if (index < LINEAR_BUCKETS) {
+            return index;
+        }
+        int shift = (index - LINEAR_BUCKETS) / SUB_BUCKETS + 1;
+        long subBucket = (index - LINEAR_BUCKETS) % SUB_BUCKETS + SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    public void recordMicros(long micros) {
+        counts.increment(indexOf(micros));
+        counts.increment(TOTAL_COUNT);
+        counts.add(TOTAL_MICROS, micros);
+    }
+
+    public void recordNanos(long nanos) {
+        recordMicros(nanos / 1000);
+    }
+
+    public long getTotalCount() {
+        return counts.get(TOTAL_COUNT);
+    }
+
+    /**
+     * @return the average latency, in milliseconds.
+     */
+    public double getAverageLatency() {
+        long count = counts.get(TOTAL_COUNT);
+        return count == 0 ? 0 : counts.get(TOTAL_MICROS) / 1000.0 / count;
+    }
+
+    /**
+     * @param percentile between 0 and 1, as for ClientStats.kPercentileLatencyAsDouble.
+     * @return the latency at the given percentile, in milliseconds.
+     */
+    public double kPercentileLatencyAsDouble(double percentile) {
+        long[] buckets = counts.getAll();
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) count += buckets[i];
+        if (count == 0) return 0;
+
+        long rank = Math.max(1, (long) Math.ceil(percentile * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += buckets[i];
+            if (seen >= rank) {
+                return valueAt(i) / 1000.0;
+            }
+        }
+        return valueAt(BUCKET_COUNT - 1) / 1000.0;
+    }
+
+    /**
+     * @return the highest recorded latency (bucket upper bound), in milliseconds.
+     */
+    public double getMaxLatency() {
+        for (int i = BUCKET_COUNT - 1; i >= 0; i--) {
+            if (counts.get(i) > 0) return valueAt(i) / 1000.0;
+        }
+        return 0;
+    }
+
+    /**
+     * Adds the counts of another histogram to this one.
+     */
+    public void add(LatencyHistogram other) {
+        long[] values = other.counts.getAll();
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != 0) counts.add(i, values[i]);
+        }
+    }
+
+    /**
+     * Removes the counts of another histogram, typically an earlier copy of
+     * this one, leaving what was recorded since.
+     */
+    public void subtract(LatencyHistogram other) {
+        long[] values = other.counts.getAll();
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != 0) counts.add(i, -values[i]);
+        }
+    }
+
+    /**
+     * @return a new histogram with the counts of this one, which keeps recording.
+     */
+    public LatencyHistogram copy() {
+        LatencyHistogram copy = new LatencyHistogram(1);
+        copy.add(this);
+        return copy;
+    }
+
+    /**
+     * @return a compact text form of the histogram, <code>count/micros</code>
+     * followed by the non empty buckets as <code>,index:count</code> pairs.
+     */
+    public String encode() {
+        long[] values = counts.getAll();
+        StringBuilder text = new StringBuilder();
+        text.append(values[TOTAL_COUNT]).append('/').append(values[TOTAL_MICROS]);
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            if (values[i] != 0) text.append(',').append(i).append(':').append(values[i]);
+        }
+        return text.toString();
+    }
+
+    /**
+     * @return the histogram of the given {@link #encode()} text.
+     */
+    public static LatencyHistogram decode(String text) {
+        LatencyHistogram histogram = new LatencyHistogram(1);
+        String[] parts = text.split(",");
+
+        int slash = parts[0].indexOf('/');
+        histogram.counts.set(TOTAL_COUNT, Long.parseLong(parts[0].substring(0, slash)));
+        histogram.counts.set(TOTAL_MICROS, Long.parseLong(parts[0].substring(slash + 1)));
+        for (int i = 1; i < parts.length; i++) {
+            int colon = parts[i].indexOf(':');
+            histogram.counts.set(Integer.parseInt(parts[i].substring(0, colon)),
+                    Long.parseLong(parts[i].substring(colon + 1)));
+        }
+        return histogram;
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT + 2; i++) counts.set(i, 0);
+    }
+}
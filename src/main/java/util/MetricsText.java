@@ -0,0 +1,119 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Sandeep Kunkunuru
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package util;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Builds a page of metrics in the Prometheus text exposition format, which
+ * most scrapers read: a <code># HELP</code> and <code># TYPE</code> line per
+ * metric name, then one <code>name{labels} value</code> line per sample.
+ */
+public class MetricsText {
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final StringBuilder text = new StringBuilder();
+    private final Set<String> described = new HashSet<String>();
+
+    /**
+     * Adds a sample of a counter, a value that only ever grows.
+     *
+     * @param labels label names and values, alternating.
+     */
+    public MetricsText counter(String name, String help, double value, String... labels) {
+        return sample(name, "counter", help, value, labels);
+    }
+
+    /**
+     * Adds a sample of a gauge, a value that goes up and down.
+     *
+     * @param labels label names and values, alternating.
+     */
+    public MetricsText gauge(String name, String help, double value, String... labels) {
+        return sample(name, "gauge", help, value, labels);
+    }
+
+    private MetricsText sample(String name, String type, String help, double value, String... labels) {
+        // samples of the same metric share its description
+        if (described.add(name)) {
+            text.append("# HELP ").append(name).append(' ').append(help).append('\n');
+            text.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        }
+
+        text.append(name);
+        if (labels.length > 0) {
+            text.append('{');
+            for (int i = 0; i + 1 < labels.length; i += 2) {
+                if (i > 0) text.append(',');
+                text.append(labels[i]).append("=\"")
+                        .append(labels[i + 1].replace("\\", "\\\\").replace("\"", "\\\"")).append('"');
+            }
+            text.append('}');
+        }
+        text.append(' ').append(format(value)).append('\n');
+        return this;
+    }
+
+    static String format(double value) {
+        if (value == Math.rint(value) && !Double.isInfinite(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        return String.format(Locale.US, "%.6g", value);
+    }
+
+    /**
+     * Adds the heap, garbage collection and thread figures of this JVM.
+     */
+    public MetricsText jvm() {
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        gauge("jvm_heap_used_bytes", "Heap memory in use.", heap.getUsed());
+        gauge("jvm_heap_committed_bytes", "Heap memory committed by the JVM.", heap.getCommitted());
+        gauge("jvm_heap_max_bytes", "Largest heap the JVM may use.", heap.getMax());
+
+        // the samples of a metric must be contiguous
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            counter("jvm_gc_collections_total", "Garbage collections run.", gc.getCollectionCount(),
+                    "gc", gc.getName());
+        }
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            counter("jvm_gc_collection_seconds_total", "Time spent in garbage collections.",
+                    gc.getCollectionTime() / 1000.0, "gc", gc.getName());
+        }
+
+        gauge("jvm_threads", "Live threads.", ManagementFactory.getThreadMXBean().getThreadCount());
+        gauge("jvm_uptime_seconds", "Time since the JVM started.", ManagementFactory.getRuntimeMXBean().getUptime() / 1000.0);
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return text.toString();
+    }
+}
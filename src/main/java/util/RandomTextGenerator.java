@@ -24,22 +24,104 @@
 
 package util;
 
+import java.nio.ByteBuffer;
 import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * Created by sandeep on 7/16/14.
+ *
+ * Generates random text out of a set of permissible characters. Unless a
+ * generator is given, every thread draws from its own {@link ThreadLocalRandom},
+ * and text is built in a reusable per thread buffer, so the only allocation
+ * left per call is the returned String.
  */
 public class RandomTextGenerator {
+    private static final ThreadLocal<char[]> buffers = new ThreadLocal<char[]>() {
+        @Override
+        protected char[] initialValue() {
+            return new char[128];
+        }
+    };
 
     public static String generateText(int length, char[] permissibleCharacters) {
-        Random rand = new Random();
+        return generateText(length, permissibleCharacters, ThreadLocalRandom.current());
+    }
+
+    public static String generateText(int length, char[] permissibleCharacters, Random rand) {
+        char[] buffer = buffers.get();
+        if (buffer.length < length) {
+            buffer = new char[Math.max(length, 2 * buffer.length)];
+            buffers.set(buffer);
+        }
+
+        fill(buffer, 0, length, permissibleCharacters, rand);
+        return new String(buffer, 0, length);
+    }
+
+    /**
+     * Fills <code>length</code> characters of <code>text</code>, starting at
+     * <code>offset</code>, with random permissible characters.
+     */
+    public static void fill(char[] text, int offset, int length, char[] permissibleCharacters, Random rand) {
+        int end = offset + length;
+        int i = offset;
+
+        // every 64 bit draw gives two characters
+        while (i + 1 < end) {
+            long bits = rand.nextLong();
+            text[i++] = permissibleCharacters[pick(bits, permissibleCharacters.length)];
+            text[i++] = permissibleCharacters[pick(bits >>> 32, permissibleCharacters.length)];
+        }
+        if (i < end) {
+            text[i] = permissibleCharacters[pick(rand.nextInt(), permissibleCharacters.length)];
+        }
+    }
+
+    /**
+     * Puts <code>length</code> random permissible characters, as single byte
+     * (ASCII) characters, at the current position of <code>text</code>.
+     */
+    public static void fill(ByteBuffer text, int length, char[] permissibleCharacters, Random rand) {
+        int i = 0;
+        while (i + 1 < length) {
+            long bits = rand.nextLong();
+            text.put((byte) permissibleCharacters[pick(bits, permissibleCharacters.length)]);
+            text.put((byte) permissibleCharacters[pick(bits >>> 32, permissibleCharacters.length)]);
+            i += 2;
+        }
+        if (i < length) {
+            text.put((byte) permissibleCharacters[pick(rand.nextInt(), permissibleCharacters.length)]);
+        }
+    }
+
+    /**
+     * Maps the low 32 random bits to [0, bound) with a multiply and a shift
+     * rather than a division, the bias being negligible for small alphabets.
+     */
+    private static int pick(long bits, int bound) {
+        return (int) (((bits & 0xFFFFFFFFL) * bound) >>> 32);
+    }
+
+    /**
+     * Generates text that only depends on the given key: the same key always
+     * produces the same text, while close keys produce unrelated texts.
+     */
+    public static String generateText(int length, char[] permissibleCharacters, long key) {
+        char[] text = new char[length];
+        long state = key;
 
-        StringBuilder str = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            // splitmix64 step
+            state += 0x9E3779B97F4A7C15L;
+            long z = state;
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            z = z ^ (z >>> 31);
 
-        while (str.length() < length) {
-            str.append(permissibleCharacters[rand.nextInt(permissibleCharacters.length)]);
+            text[i] = permissibleCharacters[(int) ((z >>> 1) % permissibleCharacters.length)];
         }
 
-        return str.toString();
+        return new String(text);
     }
 }
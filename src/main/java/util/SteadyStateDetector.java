@@ -0,0 +1,121 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Sandeep Kunkunuru
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package util;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Tells when a run has reached its steady state from its interval metrics:
+ * over the last <code>window</code> intervals, the coefficient of variation
+ * (standard deviation over mean) of the throughput stays within
+ * <code>throughputTolerance</code>, and the one of the latency within
+ * <code>latencyTolerance</code>. Latencies are noisier than throughput, so
+ * they usually get the looser tolerance.
+ *
+ * Not thread safe, intervals are expected to be added by a single thread.
+ */
+public class SteadyStateDetector {
+    private final int window;
+    private final double throughputTolerance;
+    private final double latencyTolerance;
+
+    private final Deque<double[]> intervals = new ArrayDeque<double[]>();
+    private int count = 0;
+    // number of intervals added when the steady state was first reached, 0 until then
+    private int steadyAfter = 0;
+
+    public SteadyStateDetector(int window, double throughputTolerance, double latencyTolerance) {
+        this.window = window;
+        this.throughputTolerance = throughputTolerance;
+        this.latencyTolerance = latencyTolerance;
+    }
+
+    /**
+     * Adds the metrics of the next interval.
+     *
+     * @return true once the last intervals are steady.
+     */
+    public boolean add(double throughput, double latency) {
+        intervals.addLast(new double[]{throughput, latency});
+        if (intervals.size() > window) intervals.removeFirst();
+        count++;
+
+        // an idle run is not steady, whatever its variation
+        boolean steady = intervals.size() == window
+                && mean(0) > 0
+                && variation(0) <= throughputTolerance
+                && variation(1) <= latencyTolerance;
+        if (steady && steadyAfter == 0) steadyAfter = count;
+        return steady;
+    }
+
+    /**
+     * @return whether the steady state was reached at some point.
+     */
+    public boolean isSteady() {
+        return steadyAfter > 0;
+    }
+
+    /**
+     * @return the number of intervals added up to the first steady window, 0 if none yet.
+     */
+    public int getSteadyAfter() {
+        return steadyAfter;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * @return the mean throughput over the last intervals.
+     */
+    public double getThroughput() {
+        return mean(0);
+    }
+
+    /**
+     * @return the mean latency over the last intervals.
+     */
+    public double getLatency() {
+        return mean(1);
+    }
+
+    private double mean(int metric) {
+        if (intervals.isEmpty()) return 0;
+        double sum = 0;
+        for (double[] interval : intervals) sum += interval[metric];
+        return sum / intervals.size();
+    }
+
+    private double variation(int metric) {
+        double mean = mean(metric);
+        if (mean == 0) return 0;
+        double sum = 0;
+        for (double[] interval : intervals) sum += (interval[metric] - mean) * (interval[metric] - mean);
+        return Math.sqrt(sum / intervals.size()) / mean;
+    }
+}
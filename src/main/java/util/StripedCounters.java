@@ -0,0 +1,106 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Sandeep Kunkunuru
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed set of counters that many threads update concurrently, such as the
+ * callback threads of several clients. Every counter is spread over stripes
+ * picked by thread, each stripe on its own cache lines, so that threads
+ * seldom write to the same line. Reading sums the stripes.
+ *
+ * Plays the part of one LongAdder per counter, which Java 7 lacks.
+ */
+public class StripedCounters {
+    // longs per cache line pair, so that adjacent stripes never share a line
+    private static final int PADDING = 16;
+
+    private final int counters;
+    private final int stride;
+    private final int mask;
+    private final AtomicLongArray cells;
+
+    public StripedCounters(int counters) {
+        this(counters, 4 * Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param stripes rounded up to a power of two, 1 when the counters are
+     *                seldom updated concurrently and only memory matters.
+     */
+    public StripedCounters(int counters, int stripes) {
+        this.counters = counters;
+        this.stride = (counters + PADDING - 1) / PADDING * PADDING;
+
+        int rounded = stripes <= 1 ? 1 : Integer.highestOneBit(stripes - 1) << 1;
+        this.mask = rounded - 1;
+        this.cells = new AtomicLongArray(rounded * stride);
+    }
+
+    private int stripe() {
+        // spread thread ids, which are mostly consecutive
+        long id = Thread.currentThread().getId() * 0x9E3779B97F4A7C15L;
+        return (int) (id >>> 32) & mask;
+    }
+
+    public void add(int counter, long delta) {
+        cells.addAndGet(stripe() * stride + counter, delta);
+    }
+
+    public void increment(int counter) {
+        add(counter, 1);
+    }
+
+    public long get(int counter) {
+        long sum = 0;
+        for (int i = counter; i < cells.length(); i += stride) {
+            sum += cells.get(i);
+        }
+        return sum;
+    }
+
+    /**
+     * @return the current value of every counter. Counters updated meanwhile
+     * may be read at slightly different points in time.
+     */
+    public long[] getAll() {
+        long[] values = new long[counters];
+        for (int i = 0; i < counters; i++) {
+            values[i] = get(i);
+        }
+        return values;
+    }
+
+    /**
+     * Sets a counter, which must not be updated concurrently.
+     */
+    public void set(int counter, long value) {
+        for (int i = counter; i < cells.length(); i += stride) {
+            cells.set(i, 0);
+        }
+        cells.set(counter, value);
+    }
+}